@@ -0,0 +1,132 @@
+package ml.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Random;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+/**
+ * Synthetic data for the benchmarks.  Everything is generated from a fixed seed so
+ * that every run of a benchmark sees the same data.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class BenchmarkData {
+	public static final long SEED = 158;
+	
+	// words for the text files, only a few of them say anything about the label
+	private static final String[] WORDS = {"cherry", "oak", "tannin", "berry", "apple", "lemon", "citrus", "crisp"};
+	
+	/**
+	 * Generate a data set with continuous features and a binary label that depends
+	 * on the first few features.
+	 * 
+	 * @param rows number of examples
+	 * @param features number of features
+	 * @return the data set
+	 */
+	public static DataSet dense(int rows, int features){
+		Random rand = new Random(SEED);
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int f = 0; f < features; f++ ){
+			featureMap.put(f, "f" + f);
+		}
+		
+		DataSet data = new DataSet(featureMap);
+		
+		for( int i = 0; i < rows; i++ ){
+			Example e = new Example();
+			double score = 0.0;
+			
+			for( int f = 0; f < features; f++ ){
+				// make some of the values zero so the zero vs. non-zero splits have something to do
+				double value = rand.nextInt(4) == 0 ? 0.0 : Math.round(rand.nextGaussian()*1000)/100.0;
+				e.addFeature(f, value);
+				
+				if( f < 3 ){
+					score += value;
+				}
+			}
+			
+			e.setLabel(score + rand.nextGaussian() > 0 ? 1.0 : 0.0);
+			data.addData(e);
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * Write a data set like dense(rows, features) as a CSV file in the format
+	 * read by DataSet(filename, DataSet.CSVFILE).
+	 * 
+	 * @param rows number of examples
+	 * @param features number of features
+	 * @return the file, which is deleted when the JVM exits
+	 * @throws IOException
+	 */
+	public static File csvFile(int rows, int features) throws IOException{
+		File file = File.createTempFile("benchmark", ".csv");
+		file.deleteOnExit();
+		
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		out.println("# benchmark data");
+		
+		for( int f = 0; f < features; f++ ){
+			out.print("f" + f + ",");
+		}
+		
+		out.println("label");
+		
+		for( Example e: dense(rows, features).getData() ){
+			out.println(e.toCSVString());
+		}
+		
+		out.close();
+		return file;
+	}
+	
+	/**
+	 * Write a text file in the format read by DataSet(filename, DataSet.TEXTFILE),
+	 * with a vocabulary of roughly vocabulary words.
+	 * 
+	 * @param rows number of examples
+	 * @param wordsPerRow number of words in each example
+	 * @param vocabulary number of distinct filler words
+	 * @return the file, which is deleted when the JVM exits
+	 * @throws IOException
+	 */
+	public static File textFile(int rows, int wordsPerRow, int vocabulary) throws IOException{
+		Random rand = new Random(SEED);
+		File file = File.createTempFile("benchmark", ".txt");
+		file.deleteOnExit();
+		
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		
+		for( int i = 0; i < rows; i++ ){
+			int label = rand.nextBoolean() ? 1 : -1;
+			StringBuilder line = new StringBuilder();
+			line.append(label);
+			
+			for( int w = 0; w < wordsPerRow; w++ ){
+				line.append(' ');
+				
+				if( rand.nextInt(4) == 0 ){
+					line.append(WORDS[rand.nextInt(WORDS.length/2) + (label == 1 ? 0 : WORDS.length/2)]);
+				}else{
+					line.append("word").append(rand.nextInt(vocabulary));
+				}
+			}
+			
+			out.println(line);
+		}
+		
+		out.close();
+		return file;
+	}
+}
@@ -0,0 +1,62 @@
+package ml.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ml.data.DataSet;
+import ml.data.DataSetSplit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to split and bag data sets.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataSetBenchmark {
+	@Param({"10000", "1000000"})
+	public int rows;
+	
+	@Param({"10"})
+	public int features;
+	
+	private DataSet data;
+	private Random rand;
+	
+	@Setup
+	public void setup(){
+		data = BenchmarkData.dense(rows, features);
+		rand = new Random(BenchmarkData.SEED);
+	}
+	
+	@Benchmark
+	public DataSetSplit split(){
+		return data.split(0.8);
+	}
+	
+	@Benchmark
+	public DataSet createDatasetWithBagging(){
+		return data.createDatasetWithBagging(rand);
+	}
+	
+	@Benchmark
+	public int[] bootstrapWeights(){
+		return data.bootstrapWeights(rand);
+	}
+}
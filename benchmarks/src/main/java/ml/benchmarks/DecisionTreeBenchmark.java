@@ -0,0 +1,67 @@
+package ml.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import ml.classifiers.DecisionTreeClassifier;
+import ml.data.DataSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Training time of a single decision tree.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecisionTreeBenchmark {
+	@Param({"1000", "100000"})
+	public int rows;
+	
+	@Param({"10", "100"})
+	public int features;
+	
+	@Param({"5", "10"})
+	public int depth;
+	
+	@Param({"false", "true"})
+	public boolean histogramSplits;
+	
+	private DataSet data;
+	
+	@Setup
+	public void setup(){
+		data = BenchmarkData.dense(rows, features);
+		
+		// build the columns outside of the measurement
+		data.getColumns();
+		data.getClassIds();
+		
+		if( histogramSplits ){
+			data.getFeatureBins();
+		}
+	}
+	
+	@Benchmark
+	public DecisionTreeClassifier train(){
+		DecisionTreeClassifier tree = new DecisionTreeClassifier();
+		tree.setDepthLimit(depth);
+		tree.setHistogramSplits(histogramSplits);
+		tree.train(data);
+		return tree;
+	}
+}
@@ -0,0 +1,87 @@
+package ml.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import ml.classifiers.EnsembleTreeClassifier;
+import ml.data.DataSet;
+import ml.data.DataSetSplit;
+import ml.data.Example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Training and classification time of the random forest.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EnsembleBenchmark {
+	@Param({"10000", "100000"})
+	public int rows;
+	
+	@Param({"10", "100"})
+	public int features;
+	
+	@Param({"5", "10"})
+	public int depth;
+	
+	@Param({"20", "100"})
+	public int numTrees;
+	
+	private DataSet train;
+	private DataSet test;
+	private EnsembleTreeClassifier trained;
+	
+	@Setup
+	public void setup(){
+		DataSetSplit split = BenchmarkData.dense(rows, features).split(0.8);
+		train = split.getTrain();
+		test = split.getTest();
+		trained = newForest();
+		trained.train(train);
+		test.getColumns();
+	}
+	
+	private EnsembleTreeClassifier newForest(){
+		EnsembleTreeClassifier forest = new EnsembleTreeClassifier();
+		forest.setSeed(BenchmarkData.SEED);
+		forest.setDepthLimit(depth);
+		forest.setNumTrees(numTrees);
+		return forest;
+	}
+	
+	@Benchmark
+	public EnsembleTreeClassifier train(){
+		EnsembleTreeClassifier forest = newForest();
+		forest.train(train);
+		return forest;
+	}
+	
+	@Benchmark
+	public void classify(Blackhole blackhole){
+		for( Example e: test.getData() ){
+			blackhole.consume(trained.classify(e));
+		}
+	}
+	
+	@Benchmark
+	public double[] classifyBatch(){
+		return trained.classifyBatch(test);
+	}
+}
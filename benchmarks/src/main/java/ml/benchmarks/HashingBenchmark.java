@@ -0,0 +1,84 @@
+package ml.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ml.classifiers.EnsembleTreeClassifier;
+import ml.data.DataSet;
+import ml.data.FeatureHasher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashed text end to end, from the file to classifyBatch, through each way of
+ * hashing it: TextDataReader, ParallelDataLoader and FeatureHasher as a
+ * preprocessor.  The bit counts are wide enough that anything holding examples
+ * times 2^bits values runs out of the 1g heap.  That the three paths classify
+ * the same is checked by FeatureHasherTest, not here.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class HashingBenchmark {
+	@Param({"20", "24"})
+	public int bits;
+	
+	@Param({"10000"})
+	public int rows;
+	
+	private File textFile;
+	
+	@Setup
+	public void setup() throws IOException{
+		textFile = BenchmarkData.textFile(rows, 20, 10000);
+	}
+	
+	/**
+	 * Train a forest on the data and classify it
+	 * 
+	 * @param data
+	 * @return the predictions
+	 */
+	private static double[] trainAndClassify(DataSet data){
+		EnsembleTreeClassifier forest = new EnsembleTreeClassifier();
+		forest.setSeed(BenchmarkData.SEED);
+		forest.setDepthLimit(10);
+		forest.setNumTrees(20);
+		forest.setFeatureBagging(true);
+		forest.train(data);
+		return forest.classifyBatch(data);
+	}
+	
+	@Benchmark
+	public double[] reader(){
+		return trainAndClassify(new DataSet(textFile.getPath(), new FeatureHasher(bits)));
+	}
+	
+	@Benchmark
+	public double[] parallelLoader(){
+		return trainAndClassify(new DataSet(textFile.getPath(), new FeatureHasher(bits), 4));
+	}
+	
+	@Benchmark
+	public double[] preprocessor(){
+		DataSet data = new DataSet(textFile.getPath(), DataSet.TEXTFILE);
+		new FeatureHasher(bits).preprocessTrain(data);
+		return trainAndClassify(data);
+	}
+}
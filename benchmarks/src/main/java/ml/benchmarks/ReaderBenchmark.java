@@ -0,0 +1,60 @@
+package ml.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ml.data.DataSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load CSV and text files (CSVDataReader and TextDataReader through the
+ * DataSet constructor).
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReaderBenchmark {
+	@Param({"10000", "100000"})
+	public int rows;
+	
+	@Param({"10", "100"})
+	public int features;
+	
+	private File csvFile;
+	private File textFile;
+	
+	@Setup
+	public void setup() throws IOException{
+		csvFile = BenchmarkData.csvFile(rows, features);
+		
+		// features doubles as the number of words per line for the text file
+		textFile = BenchmarkData.textFile(rows, features, 10000);
+	}
+	
+	@Benchmark
+	public DataSet readCSV(){
+		return new DataSet(csvFile.getPath(), DataSet.CSVFILE);
+	}
+	
+	@Benchmark
+	public DataSet readText(){
+		return new DataSet(textFile.getPath(), DataSet.TEXTFILE);
+	}
+}
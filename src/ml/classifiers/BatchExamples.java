@@ -0,0 +1,79 @@
+package ml.classifiers;
+
+import ml.data.DataSet;
+import ml.data.SparseFeatures;
+
+/**
+ * The examples of a data set, read for classifying them in a batch.  Dense data
+ * sets are read from their columns.  Sparse ones (see DataSet.isSparse) are read
+ * from the rows of their non-zero values instead, so classifying e.g. text never
+ * builds examples times vocabulary columns.  A batch can also be just some of
+ * the examples, picked by index, so a fold is classified without copying it.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+class BatchExamples {
+	private double[][] columns;
+	private SparseFeatures rows;
+	private int[] index; // the example of the data set each one is, or null for all of them in order
+	private int size;
+	
+	/**
+	 * @param data the examples to classify
+	 */
+	BatchExamples(DataSet data){
+		this(data, null);
+	}
+	
+	/**
+	 * @param data
+	 * @param index the examples of data to classify, by index, or null for all of them
+	 */
+	BatchExamples(DataSet data, int[] index){
+		if( data.isSparse() ){
+			rows = data.getSparseFeatures();
+		}else{
+			columns = data.getColumns();
+		}
+		
+		this.index = index;
+		size = index == null ? data.size() : index.length;
+	}
+	
+	/**
+	 * @return the number of examples
+	 */
+	int size(){
+		return size;
+	}
+	
+	/**
+	 * @param tree
+	 * @param example the index of an example in the batch
+	 * @return the offset of the leaf of tree the example falls into
+	 */
+	int findLeaf(FlatDecisionTree tree, int example){
+		if( index != null ){
+			example = index[example];
+		}
+		
+		return rows == null ? tree.findLeaf(columns, example) : tree.findLeaf(rows, example);
+	}
+	
+	/**
+	 * @param example the index of an example in the batch
+	 * @param feature
+	 * @return the value of the feature for the example (0.0 past the last feature)
+	 */
+	double getFeature(int example, int feature){
+		if( index != null ){
+			example = index[example];
+		}
+		
+		if( rows != null ){
+			return rows.getValue(example, feature);
+		}
+		
+		return feature < columns.length ? columns[feature][example] : 0.0;
+	}
+}
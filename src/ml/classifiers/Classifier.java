@@ -26,4 +26,32 @@ public interface Classifier {
 	public double classify(Example example);
 	
 	public double confidence(Example example);
+	
+	/**
+	 * Classify all of the examples in the data set.  Should only be called *after*
+	 * train has been called.
+	 * 
+	 * @param data
+	 * @return the predicted class label for each example, in example order
+	 */
+	public double[] classifyBatch(DataSet data);
+	
+	/**
+	 * Classify some of the examples in the data set, picked by index, without
+	 * copying them out of it.  Should only be called *after* train has been called.
+	 * 
+	 * @param data
+	 * @param rows the indices of the examples to classify
+	 * @return the predicted class label for each of the rows, in the same order
+	 */
+	public double[] classifyBatch(DataSet data, int[] rows);
+	
+	/**
+	 * Get the confidence for all of the examples in the data set.  Should only be
+	 * called *after* train has been called.
+	 * 
+	 * @param data
+	 * @return the confidence for each example, in example order
+	 */
+	public double[] confidenceBatch(DataSet data);
 }
@@ -0,0 +1,16 @@
+package ml.classifiers;
+
+/**
+ * Makes new, untrained classifiers, for running several trainings of the same
+ * kind of classifier at once (e.g. the folds of a cross-validation).
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ * 
+ */
+public interface ClassifierFactory {
+	/**
+	 * @return a new classifier, which must not share any state with the classifiers
+	 * made before it
+	 */
+	public Classifier newClassifier();
+}
@@ -45,5 +45,35 @@ public class ClassifierTimer {
 		for( Example e: dataset.getData() ){
 			classifier.classify(e);
 		}
-	}	
+	}
+	
+	/**
+	 * Calculates the time to classify an 80/20 split of the data one example at a
+	 * time vs. all at once with classifyBatch, averaged over numRuns
+	 * 
+	 * @param classifier
+	 * @param dataset
+	 */
+	public static void timeBatchClassifier(Classifier classifier, DataSet dataset, int numRuns){
+		long singleSum = 0;
+		long batchSum = 0;
+		
+		for( int i = 0; i < numRuns; i++ ){
+			DataSetSplit split = dataset.split(0.8);
+			classifier.train(split.getTrain());
+			
+			System.gc();
+			long start = System.currentTimeMillis();
+			classifyExamples(classifier, split.getTest());
+			singleSum += System.currentTimeMillis() - start;
+			
+			System.gc();
+			start = System.currentTimeMillis();
+			classifier.classifyBatch(split.getTest());
+			batchSum += System.currentTimeMillis() - start;
+		}
+		
+		System.out.println("Average classify time: " + ((double)singleSum)/numRuns/1000 + "s");
+		System.out.println("Average classifyBatch time: " + ((double)batchSum)/numRuns/1000 + "s");
+	}
 }
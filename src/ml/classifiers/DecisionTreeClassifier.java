@@ -1,43 +1,243 @@
 package ml.classifiers;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Random;
-import java.util.Set;
+import java.util.SplittableRandom;
 
 import ml.data.DataSet;
 import ml.data.Example;
+import ml.data.FeatureBins;
+import ml.data.SparseFeatures;
 import ml.utils.HashMapCounter;
 
 /**
  * Decision tree classifier that supports multiclass classification.
  * 
  * The classifier handles non-binary features, however, when deciding on splits it
- * considers splitting by comparing zero vs. non-zero for each feature.
+ * considers splitting by comparing zero vs. non-zero for each feature.  With
+ * histogram splits turned on it instead quantizes each feature into bins and
+ * considers splitting at every bin boundary (value <= threshold).  With extra
+ * trees it instead draws a few candidate features at each node, cuts each one at
+ * a random threshold between its smallest and largest value in the node, and
+ * splits on the best of those cuts.
  * 
  * @author dkauchak
  *
  */
-public class DecisionTreeClassifier implements Classifier{
+public class DecisionTreeClassifier implements WeightedClassifier, Predictor{
 	//private DataSet allData;
 	private HashMap<Integer,String> featureMap;
-	private Set<Integer> featureIndices;
+	
+	// all of the feature indices, in an order that feature bagging shuffles as it
+	// draws features from it
+	private int[] featureOrder;
 	private DecisionTreeNode decisionTree;
+	private FlatDecisionTree flatTree; // decisionTree compiled for classification
 	private int depthMax = Integer.MAX_VALUE;
 	private boolean extraTrees = false;
 	private boolean featureBagging = false;
+	private boolean histogramSplits = false;
+	private int mtry = 0; // how many features feature bagging and extra trees draw, 0 for sqrt(#features)
+	
+	// the random number generator is restarted from the seed for each training run
+	private long seed = new Random().nextLong();
+	private SplittableRandom rand;
+	
+	// how splits are scored
+	public static final int ERROR = 0; // training error
+	public static final int GINI = 1; // Gini impurity
+	public static final int ENTROPY = 2; // information gain
+	private int splitCriterion = ERROR;
+	
+	// data with fewer non-zero values than this is trained on from its sparse
+	// index instead of its columns (unless histogram splits are used)
+	public static final double SPARSE_DENSITY = DataSet.SPARSE_DENSITY;
+	
+	// column-major view of the training data, only held on to while training
+	private double[][] columns;
+	
+	// or, for sparse data, the non-zero features of the training data.  Examples
+	// are marked with the current stamp to test whether they're in a node (or
+	// a branch) and candidatePosition maps a feature to its position in candidates.
+	private SparseFeatures sparse;
+	private int[] mark;
+	private int stamp;
+	private int[] candidatePosition;
+	private double[] classLabels;
+	private int[] classIds;
+	private int numClasses;
+	
+	// the indices of the training examples.  Each node of the tree being built owns
+	// a [start, end) range of this array, which gets partitioned in place when the
+	// node is split (like quicksort), so building the tree doesn't copy any data.
+	private int[] examples;
+	
+	// how many times each example counts, only held on to while training
+	private int[] weights;
+	
+	// label counts per class id, reused for every node
+	private int[] nodeCounts;
+	
+	// the candidate features of a node (the first numCandidates entries) and their
+	// [candidate][branch][class] label counts, reused for every node
+	private int[] candidates;
+	private int[] contingency;
+	
+	// for extra trees, each candidate's range of values in the node, its random
+	// cut and (for sparse data) its number of non-zero values in the node
+	private double[] candidateMin;
+	private double[] candidateMax;
+	private double[] cuts;
+	private int[] nonZeros;
+	
+	// binned training data, only used for histogram splits
+	private FeatureBins bins;
+	private int[] histogram; // [bin*numClasses + class] counts, reused for every feature and node
 	
 	public void train(DataSet data) {
-		if( data.getData().size() == 0 ){
+		train(data, null);
+	}
+	
+	/**
+	 * Train on a weighted version of the data set, where weights[i] says how many
+	 * times example i should be counted, e.g. the number of times it was drawn
+	 * for a bootstrap sample.  Examples with weight 0 are left out.  This avoids
+	 * building a new data set for every sample.
+	 * 
+	 * @param data
+	 * @param weights the weight of each example, or null to weight all examples 1
+	 */
+	public void train(DataSet data, int[] weights) {
+		if( data.size() == 0 ){
 			throw new RuntimeException("Tried to train without any data");
 		}
+		if( weights != null && weights.length != data.size() ){
+			throw new IllegalArgumentException("Expected " + data.size() + " weights but got " + weights.length);
+		}
+		
 		featureMap = data.getFeatureMap();
-		featureIndices = data.getAllFeatureIndices();
-		decisionTree = buildTree(data.getData(), depthMax);
+		featureOrder = new int[featureMap.size()];
+		int numFeatures = 0;
+		
+		for( int featureIndex: data.getAllFeatureIndices() ){
+			featureOrder[numFeatures++] = featureIndex;
+		}
+		
+		Arrays.sort(featureOrder);
+		rand = new SplittableRandom(seed);
+		
+		boolean useBins = useHistogramSplits(data, histogramSplits, extraTrees);
+		
+		if( useSparseSplits(data, useBins) ){
+			sparse = data.getSparseFeatures();
+			mark = new int[data.size()];
+			stamp = 0;
+			candidatePosition = new int[sparse.getNumFeatures()];
+			Arrays.fill(candidatePosition, -1);
+		}else{
+			columns = data.getColumns();
+		}
+		
+		classLabels = data.getClassLabels();
+		classIds = data.getClassIds();
+		numClasses = classLabels.length;
+		nodeCounts = new int[numClasses];
+		candidates = new int[featureOrder.length];
+		
+		// the histogram splits count their cuts in a BinSplit instead
+		contingency = useBins ? null : new int[featureOrder.length*2*numClasses];
+		
+		if( extraTrees ){
+			candidateMin = new double[featureOrder.length];
+			candidateMax = new double[featureOrder.length];
+			cuts = new double[featureOrder.length];
+			nonZeros = new int[featureOrder.length];
+		}
+		
+		if( useBins ){
+			bins = data.getFeatureBins();
+			histogram = new int[FeatureBins.MAX_BINS*numClasses];
+		}
+		
+		if( weights == null ){
+			weights = new int[data.size()];
+			Arrays.fill(weights, 1);
+		}
+		
+		this.weights = weights;
+		int numExamples = 0;
+		
+		for( int i = 0; i < weights.length; i++ ){
+			if( weights[i] > 0 ){
+				numExamples++;
+			}
+		}
+		
+		if( numExamples == 0 ){
+			throw new RuntimeException("Tried to train without any data");
+		}
+		
+		examples = new int[numExamples];
+		numExamples = 0;
+		
+		for( int i = 0; i < weights.length; i++ ){
+			if( weights[i] > 0 ){
+				examples[numExamples++] = i;
+			}
+		}
+		
+		decisionTree = buildTree(0, examples.length, depthMax);
+		flatTree = new FlatDecisionTree(decisionTree, classLabels);
+		
+		columns = null;
+		sparse = null;
+		mark = null;
+		candidatePosition = null;
+		classIds = null;
+		this.weights = null;
+		examples = null;
+		bins = null;
+		histogram = null;
+		featureOrder = null;
+		candidates = null;
+		contingency = null;
+		candidateMin = null;
+		candidateMax = null;
+		cuts = null;
+		nonZeros = null;
 	}
 		
+	/**
+	 * Whether a tree would split on the bins of data (see setHistogramSplits).
+	 * Extra trees cut the feature values themselves, not their bins, and sparse
+	 * data (see SPARSE_DENSITY) isn't binned since the bins take examples times
+	 * feature indices bytes, e.g. 2^bits per example for hashed text.
+	 * 
+	 * @param data
+	 * @param histogramSplits
+	 * @param extraTrees
+	 * @return whether to use the bins
+	 */
+	static boolean useHistogramSplits(DataSet data, boolean histogramSplits, boolean extraTrees){
+		return histogramSplits && !extraTrees && !data.isSparse();
+	}
+	
+	/**
+	 * Whether a tree would train on the sparse index of data rather than its
+	 * columns (see SPARSE_DENSITY)
+	 * 
+	 * @param data
+	 * @param histogramSplits
+	 * @return whether to use the sparse index
+	 */
+	static boolean useSparseSplits(DataSet data, boolean histogramSplits){
+		return !histogramSplits && data.isSparse();
+	}
+	
 	/**
 	 * Set the maximum height of the tree to be learned
 	 * 
@@ -50,64 +250,75 @@ public class DecisionTreeClassifier implements Classifier{
 	/**
 	 * Helper method for building the decision tree.
 	 * 
-	 * @param currentData the data (non-empty) to build the tree over
-	 * @param usedFeatures the features that have been used already
+	 * @param start the beginning (inclusive) of the range of examples to build the tree over
+	 * @param end the end (exclusive) of the range of examples, which must be non-empty
 	 * @param depthLimit the maximum depth we can build this tree
 	 * @return the learned decision tree
 	 */
-	private DecisionTreeNode buildTree(ArrayList<Example> currentData, int depthLimit){
-		DataMajority majority = getMajorityLabel(currentData);
+	private DecisionTreeNode buildTree(int start, int end, int depthLimit){
+		DataMajority majority = getMajorityLabel(start, end);
 				
 		// base cases:
 		// 1. they're all the same label
 		// 2. we're out of features to examine
-		if( majority.majorityCount == currentData.size() ||
+		if( majority.majorityCount == majority.totalCount ||
 			depthLimit == 0){
-			return new DecisionTreeNode(majority.majorityLabel, majority.confidence);
+			return newLeaf(majority);
 		}else{
 			
-			Set<Integer> featureCandidates;
-			if (featureBagging) {
-				featureCandidates = new HashSet<Integer>();
-				
-				ArrayList<Integer> newIndices = new ArrayList<Integer>(this.featureIndices);
-				Collections.shuffle(newIndices);
-				for(int i = 0; i < Math.round(Math.sqrt(newIndices.size())); i++)
-					featureCandidates.add(newIndices.get(i));
-			}
-			else 
-				featureCandidates = this.featureIndices;
-			
+			int numCandidates = chooseCandidates();
 			
 			// find the best feature that hasn't been used yet to split on
 			int bestFeature;
-			if (extraTrees) {
-				Random rand = new Random();
-				ArrayList<Integer> fs = new ArrayList<Integer>(featureCandidates);
-				bestFeature = fs.get(rand.nextInt(fs.size()));
-			}
+			if (extraTrees || bins != null)
+				bestFeature = -1;
 			else
-				bestFeature = getBestFeatureIndex(currentData, featureCandidates);
+				bestFeature = getBestFeatureIndex(start, end, numCandidates);
 			
-			// bestFeature != -1
-			// split on the best feature
-			ArrayList<Example>[] splits = splitData(currentData, bestFeature);
+			DecisionTreeNode node;
+			int mid;
 			
-			// create a new decision tree node
-			DecisionTreeNode node = new DecisionTreeNode(bestFeature);
+			if( extraTrees ){
+				int best = getBestRandomSplit(start, end, numCandidates);
+				
+				// all of the candidates are constant here
+				if( best == -1 ){
+					return newLeaf(majority);
+				}
+				
+				mid = splitThreshold(start, end, candidates[best], cuts[best]);
+				node = new DecisionTreeNode(candidates[best], cuts[best]);
+			}else if( bins != null ){
+				BinSplit split = getBestHistogramSplit(start, end, numCandidates);
+				
+				// none of the candidates take on more than one value here
+				if( split == null ){
+					return newLeaf(majority);
+				}
+				
+				mid = splitBins(start, end, split.featureIndex, split.lastLeftBin);
+				node = new DecisionTreeNode(split.featureIndex, bins.getThreshold(split.featureIndex, split.lastLeftBin));
+			}else{
+				// bestFeature != -1
+				// split on the best feature
+				mid = splitData(start, end, bestFeature);
+				
+				// create a new decision tree node
+				node = new DecisionTreeNode(bestFeature);
+			}
 			
 			// left branch
-			if( splits[0].size() == 0 ){
-				node.setLeft(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
+			if( mid == start ){
+				node.setLeft(newLeaf(majority));
 			}else{
-				node.setLeft(buildTree(splits[0], depthLimit-1));
+				node.setLeft(buildTree(start, mid, depthLimit-1));
 			}
 			
 			// right branch
-			if( splits[1].size() == 0 ){
-				node.setRight(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
+			if( mid == end ){
+				node.setRight(newLeaf(majority));
 			}else{
-				node.setRight(buildTree(splits[1], depthLimit-1));
+				node.setRight(buildTree(mid, end, depthLimit-1));
 			}
 			
 			return node;
@@ -115,22 +326,206 @@ public class DecisionTreeClassifier implements Classifier{
 	}
 	
 	/**
-	 * Get the best feature to split on based on training error.
+	 * Create a leaf that predicts the majority label of a range of examples
+	 * 
+	 * @param majority the majority information of the examples
+	 * @return the leaf, with the fraction of the examples in each class
+	 */
+	private DecisionTreeNode newLeaf(DataMajority majority){
+		double[] classProbabilities = new double[numClasses];
+		
+		for( int c = 0; c < numClasses; c++ ){
+			classProbabilities[c] = majority.classCounts[c]/(double)majority.totalCount;
+		}
+		
+		return new DecisionTreeNode(majority.majorityLabel, majority.confidence, classProbabilities);
+	}
+	
+	/**
+	 * Put the features that a node can split on in candidates.  With feature
+	 * bagging or extra trees these are mtry features drawn at random, without
+	 * replacement, by a partial Fisher-Yates shuffle of featureOrder, otherwise
+	 * all of them.
+	 * 
+	 * @return the number of candidates
+	 */
+	private int chooseCandidates(){
+		int numFeatures = featureOrder.length;
+		
+		if( !featureBagging && !extraTrees ){
+			System.arraycopy(featureOrder, 0, candidates, 0, numFeatures);
+			return numFeatures;
+		}
+		
+		int numCandidates = mtry > 0 ? Math.min(mtry, numFeatures) :
+			(int)Math.max(1, Math.round(Math.sqrt(numFeatures)));
+		
+		for( int i = 0; i < numCandidates; i++ ){
+			int j = i + rand.nextInt(numFeatures-i);
+			int temp = featureOrder[i];
+			featureOrder[i] = featureOrder[j];
+			featureOrder[j] = temp;
+			candidates[i] = featureOrder[i];
+		}
+		
+		return numCandidates;
+	}
+	
+	/**
+	 * Get the best feature to split on based on the split criterion.  All of the
+	 * candidates are scored from a single pass over the examples, which fills in
+	 * a [candidate][branch][class] table of label counts: only the right (non-zero)
+	 * branch is counted and the left branch is what's left of the node's counts.
 	 * 
-	 * @param currentData the current set of examples
-	 * @param usedFeatures which features have been used already and are NOT eligible for splitting on
+	 * @param start the beginning (inclusive) of the current range of examples
+	 * @param end the end (exclusive) of the current range of examples
+	 * @param numCandidates the number of features (in candidates) that are eligible for splitting on
 	 * @return the index of the best feature
 	 */
-	private int getBestFeatureIndex(ArrayList<Example> currentData, Set<Integer> featureCandidates){
+	private int getBestFeatureIndex(int start, int end, int numCandidates){
+		int tableSize = numCandidates*2*numClasses;
+		Arrays.fill(contingency, 0, tableSize, 0);
+		Arrays.fill(nodeCounts, 0);
+		
+		if( sparse != null ){
+			countSparse(start, end, numCandidates);
+		}else{
+			countDense(start, end, numCandidates);
+		}
+		
+		return bestCandidate(numCandidates);
+	}
+	
+	/**
+	 * Fill in the right branch (non-zero) counts of the contingency table and the
+	 * node counts from the columns, in one pass over the node's examples
+	 * 
+	 * @param start the beginning (inclusive) of the current range of examples
+	 * @param end the end (exclusive) of the current range of examples
+	 * @param numCandidates the number of candidates in candidates
+	 */
+	private void countDense(int start, int end, int numCandidates){
+		for( int i = start; i < end; i++ ){
+			int d = examples[i];
+			int c = classIds[d];
+			int w = weights[d];
+			nodeCounts[c] += w;
+			
+			// right branch counts live at [candidate][1][class]
+			for( int f = 0, cell = numClasses + c; f < numCandidates; f++, cell += 2*numClasses ){
+				if( columns[candidates[f]][d] != DecisionTreeNode.LEFT_BRANCH ){
+					contingency[cell] += w;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Fill in the right branch (non-zero) counts of the contingency table and the
+	 * node counts from the sparse index.  Depending on which touches fewer values,
+	 * this either walks the postings of the candidates, counting the ones that
+	 * are in the node, or walks the non-zero features of the node's examples,
+	 * counting the ones that are candidates.  Either way the cost is proportional
+	 * to a number of non-zero values rather than examples times features.
+	 * 
+	 * @param start the beginning (inclusive) of the current range of examples
+	 * @param end the end (exclusive) of the current range of examples
+	 * @param numCandidates the number of candidates in candidates
+	 */
+	private void countSparse(int start, int end, int numCandidates){
+		int[] postings = sparse.getPostings();
+		int[] rowFeatures = sparse.getRowFeatures();
+		long rowCost = 0;
+		long postingsCost = 0;
+		int nodeStamp = nextStamp();
+		
+		for( int i = start; i < end; i++ ){
+			int d = examples[i];
+			nodeCounts[classIds[d]] += weights[d];
+			rowCost += sparse.getRowStart(d+1) - sparse.getRowStart(d);
+			mark[d] = nodeStamp;
+		}
+		
+		for( int f = 0; f < numCandidates; f++ ){
+			postingsCost += sparse.getPostingsStart(candidates[f]+1) - sparse.getPostingsStart(candidates[f]);
+		}
+		
+		if( postingsCost < rowCost ){
+			for( int f = 0; f < numCandidates; f++ ){
+				int cell = (f*2+1)*numClasses;
+				int last = sparse.getPostingsStart(candidates[f]+1);
+				
+				for( int p = sparse.getPostingsStart(candidates[f]); p < last; p++ ){
+					int d = postings[p];
+					
+					if( mark[d] == nodeStamp ){
+						contingency[cell + classIds[d]] += weights[d];
+					}
+				}
+			}
+		}else{
+			for( int f = 0; f < numCandidates; f++ ){
+				candidatePosition[candidates[f]] = f;
+			}
+			
+			for( int i = start; i < end; i++ ){
+				int d = examples[i];
+				int c = classIds[d];
+				int w = weights[d];
+				int last = sparse.getRowStart(d+1);
+				
+				for( int p = sparse.getRowStart(d); p < last; p++ ){
+					int f = candidatePosition[rowFeatures[p]];
+					
+					if( f >= 0 ){
+						contingency[(f*2+1)*numClasses + c] += w;
+					}
+				}
+			}
+			
+			for( int f = 0; f < numCandidates; f++ ){
+				candidatePosition[candidates[f]] = -1;
+			}
+		}
+	}
+	
+	/**
+	 * @return a stamp that no example is marked with yet
+	 */
+	private int nextStamp(){
+		if( stamp == Integer.MAX_VALUE ){
+			Arrays.fill(mark, 0);
+			stamp = 0;
+		}
+		
+		return ++stamp;
+	}
+	
+	/**
+	 * Fill in the left branch counts of the contingency table from the node counts
+	 * and the right branch counts, and score every candidate
+	 * 
+	 * @param numCandidates the number of candidates in candidates
+	 * @return the best feature
+	 */
+	private int bestCandidate(int numCandidates){
 		int bestFeature = -1;
-		double bestFeatureScore = 1.0; // lower is better for now
-		
-		for( int featureIndex: featureCandidates){
-			double error = averageTrainingError(currentData, featureIndex);
-								
-			if( error < bestFeatureScore ||
-				(error == bestFeatureScore && featureIndex < bestFeature )){
-				bestFeatureScore = error;
+		double bestFeatureScore = Double.POSITIVE_INFINITY; // lower is better
+		
+		for( int f = 0; f < numCandidates; f++ ){
+			int leftOffset = f*2*numClasses;
+			int rightOffset = leftOffset + numClasses;
+			
+			for( int c = 0; c < numClasses; c++ ){
+				contingency[leftOffset + c] = nodeCounts[c] - contingency[rightOffset + c];
+			}
+			
+			double score = splitScore(contingency, leftOffset, rightOffset);
+			int featureIndex = candidates[f];
+			
+			if( score < bestFeatureScore ||
+				(score == bestFeatureScore && featureIndex < bestFeature )){
+				bestFeatureScore = score;
 				bestFeature = featureIndex;
 			}
 		}
@@ -139,46 +534,604 @@ public class DecisionTreeClassifier implements Classifier{
 	}
 	
 	/**
-	 * Get the average training error on this data set if we split on featureIndex
+	 * Score a split with the split criterion
 	 * 
-	 * @param data the current data
-	 * @param featureIndex the feature we're considering splitting on
-	 * @return the error
+	 * @param counts label counts
+	 * @param leftOffset where the left branch counts (indexed by class id) start in counts
+	 * @param rightOffset where the right branch counts start in counts
+	 * @return the score of the split, lower is better
 	 */
-	private double averageTrainingError(ArrayList<Example> data, int featureIndex){		
-		ArrayList<Example>[] splits = splitData(data, featureIndex);
+	private double splitScore(int[] counts, int leftOffset, int rightOffset){
+		return splitScore(counts, leftOffset, rightOffset, numClasses, splitCriterion);
+	}
+	
+	/**
+	 * Score a split with a split criterion (shared with StreamingForestClassifier)
+	 * 
+	 * @param counts label counts
+	 * @param leftOffset where the left branch counts (indexed by class id) start in counts
+	 * @param rightOffset where the right branch counts start in counts
+	 * @param numClasses the number of class ids
+	 * @param splitCriterion ERROR, GINI or ENTROPY
+	 * @return the score of the split, lower is better
+	 */
+	static double splitScore(int[] counts, int leftOffset, int rightOffset, int numClasses, int splitCriterion){
+		int leftTotal = 0;
+		int rightTotal = 0;
+		
+		for( int c = 0; c < numClasses; c++ ){
+			leftTotal += counts[leftOffset + c];
+			rightTotal += counts[rightOffset + c];
+		}
+		
+		int total = leftTotal + rightTotal;
 		
-		int leftCount = splits[0].size() > 0 ? getMajorityLabel(splits[0]).majorityCount : 0;
-		int rightCount = splits[1].size() > 0 ? getMajorityLabel(splits[1]).majorityCount : 0;
+		if( splitCriterion == ERROR ){
+			// the fraction of the examples that aren't in the majority class of their branch
+			int errors = total - counts[leftOffset + argMax(counts, leftOffset, numClasses)] -
+				counts[rightOffset + argMax(counts, rightOffset, numClasses)];
+			return errors/(double)total;
+		}
 		
-		double accuracy = (leftCount+rightCount)/(double)data.size();
-		return 1-accuracy;
+		return (impurity(counts, leftOffset, leftTotal, numClasses, splitCriterion) +
+				impurity(counts, rightOffset, rightTotal, numClasses, splitCriterion))/total;
 	}
 	
 	/**
-	 * Split the data based on featureIndex
+	 * @param counts label counts
+	 * @param offset where the branch counts (indexed by class id) start in counts
+	 * @param total the number of examples in the branch
+	 * @param numClasses the number of class ids
+	 * @param splitCriterion GINI or ENTROPY
+	 * @return the Gini impurity or entropy of the branch, times the number of examples in it
+	 */
+	private static double impurity(int[] counts, int offset, int total, int numClasses, int splitCriterion){
+		if( total == 0 ){
+			return 0.0;
+		}
+		
+		double impurity = 0.0;
+		
+		for( int c = 0; c < numClasses; c++ ){
+			int count = counts[offset + c];
+			
+			if( count > 0 ){
+				double p = count/(double)total;
+				impurity += splitCriterion == GINI ? p*(1-p) : -p*Math.log(p);
+			}
+		}
+		
+		return impurity*total;
+	}
+	
+	/**
+	 * Get the best threshold split based on the split criterion, found by building a
+	 * histogram of the labels over the bins of each candidate feature.
 	 * 
-	 * @param data the data to be split
+	 * @param start the beginning (inclusive) of the current range of examples
+	 * @param end the end (exclusive) of the current range of examples
+	 * @param numCandidates the number of features (in candidates) that are eligible for splitting on
+	 * @return the best feature and the last bin of its left branch, or null if
+	 * none of the features can split this range
+	 */
+	private BinSplit getBestHistogramSplit(int start, int end, int numCandidates){
+		Arrays.fill(nodeCounts, 0);
+		
+		for( int i = start; i < end; i++ ){
+			int d = examples[i];
+			nodeCounts[classIds[d]] += weights[d];
+		}
+		
+		int nodeTotal = 0;
+		
+		for( int c = 0; c < numClasses; c++ ){
+			nodeTotal += nodeCounts[c];
+		}
+		
+		BinSplit best = new BinSplit(numClasses);
+		
+		for( int f = 0; f < numCandidates; f++ ){
+			int featureIndex = candidates[f];
+			int numBins = bins.getNumBins(featureIndex);
+			
+			if( numBins < 2 ){
+				continue;
+			}
+			
+			byte[] binColumn = bins.getBinColumn(featureIndex);
+			Arrays.fill(histogram, 0, numBins*numClasses, 0);
+			
+			for( int i = start; i < end; i++ ){
+				int d = examples[i];
+				histogram[(binColumn[d] & 0xFF)*numClasses + classIds[d]] += weights[d];
+			}
+			
+			sweepBins(histogram, 0, numBins, nodeCounts, nodeTotal, numClasses, splitCriterion, featureIndex, best);
+		}
+		
+		return best.featureIndex == -1 ? null : best;
+	}
+	
+	/**
+	 * Score every cut of a feature's histogram, sweeping the cut from left to
+	 * right one bin at a time, and keep the best one in best.  The histogram
+	 * splits here and in StreamingForestClassifier both go through this, so they
+	 * break ties the same way: the lowest score, then the smallest feature index,
+	 * then the first bin.
+	 * 
+	 * @param histogram label counts, [bin*numClasses + class id] from offset
+	 * @param offset where the feature's histogram starts in histogram
+	 * @param numBins the number of bins of the feature
+	 * @param nodeCounts the label counts of the node, over all of the bins
+	 * @param nodeTotal the sum of nodeCounts
+	 * @param numClasses the number of class ids
+	 * @param splitCriterion ERROR, GINI or ENTROPY
+	 * @param featureIndex the feature the histogram is for
+	 * @param best the best cut so far, updated if one of these is better
+	 */
+	static void sweepBins(int[] histogram, int offset, int numBins, int[] nodeCounts, int nodeTotal,
+			int numClasses, int splitCriterion, int featureIndex, BinSplit best){
+		// branchCounts holds the left then the right branch counts
+		int[] branchCounts = best.sweepCounts;
+		Arrays.fill(branchCounts, 0, numClasses, 0);
+		System.arraycopy(nodeCounts, 0, branchCounts, numClasses, numClasses);
+		int leftSize = 0;
+		
+		for( int bin = 0; bin < numBins-1; bin++ ){
+			for( int c = 0; c < numClasses; c++ ){
+				int count = histogram[offset + bin*numClasses + c];
+				branchCounts[c] += count;
+				branchCounts[numClasses + c] -= count;
+				leftSize += count;
+			}
+			
+			// only cuts that actually separate the examples are useful
+			if( leftSize == 0 || leftSize == nodeTotal ){
+				continue;
+			}
+			
+			double score = splitScore(branchCounts, 0, numClasses, numClasses, splitCriterion);
+			
+			if( best.featureIndex == -1 || score < best.score ||
+				(score == best.score && featureIndex < best.featureIndex) ){
+				best.score = score;
+				best.featureIndex = featureIndex;
+				best.lastLeftBin = bin;
+				System.arraycopy(branchCounts, 0, best.branchCounts, 0, 2*numClasses);
+			}
+		}
+	}
+	
+	/**
+	 * Split the range of examples in place so that the examples with featureIndex
+	 * in bins 0 to lastLeftBin come first.
+	 * 
+	 * @param start the beginning (inclusive) of the range of examples to be split
+	 * @param end the end (exclusive) of the range of examples to be split
 	 * @param featureIndex the feature to split on
-	 * @return the split of the data.  Entry 0 is the left branch data and entry 1 the right branch data.
+	 * @param lastLeftBin the last bin that goes down the left branch
+	 * @return the index where the right branch examples start
+	 */
+	private int splitBins(int start, int end, int featureIndex, int lastLeftBin){
+		byte[] binColumn = bins.getBinColumn(featureIndex);
+		int mid = start;
+		int last = end-1;
+		
+		while( mid <= last ){
+			if( (binColumn[examples[mid]] & 0xFF) <= lastLeftBin ){
+				mid++;
+			}else{
+				int temp = examples[mid];
+				examples[mid] = examples[last];
+				examples[last] = temp;
+				last--;
+			}
+		}
+		
+		return mid;
+	}
+	
+	/**
+	 * Get the best of a random cut of each candidate feature (extra trees).  Each
+	 * candidate is cut at a threshold drawn uniformly between its smallest and
+	 * largest value in the node and only those cuts are scored, so after one pass
+	 * to find the ranges a single pass over the node's examples counts the
+	 * branches of every cut, instead of searching each feature for its best cut.
+	 * 
+	 * @param start the beginning (inclusive) of the current range of examples
+	 * @param end the end (exclusive) of the current range of examples
+	 * @param numCandidates the number of features (in candidates) that are eligible for splitting on
+	 * @return the position in candidates (and cuts) of the best cut, or -1 if
+	 * none of the candidates take on more than one value here
+	 */
+	private int getBestRandomSplit(int start, int end, int numCandidates){
+		Arrays.fill(candidateMin, 0, numCandidates, Double.POSITIVE_INFINITY);
+		Arrays.fill(candidateMax, 0, numCandidates, Double.NEGATIVE_INFINITY);
+		Arrays.fill(contingency, 0, numCandidates*2*numClasses, 0);
+		Arrays.fill(nodeCounts, 0);
+		
+		if( sparse != null ){
+			countRandomSparse(start, end, numCandidates);
+		}else{
+			countRandomDense(start, end, numCandidates);
+		}
+		
+		int best = -1;
+		double bestScore = Double.POSITIVE_INFINITY; // lower is better
+		
+		for( int f = 0; f < numCandidates; f++ ){
+			// NaN marks a candidate that only takes on one value here
+			if( cuts[f] != cuts[f] ){
+				continue;
+			}
+			
+			// only the branch that the zeros don't go down was counted
+			int leftOffset = f*2*numClasses;
+			int rightOffset = leftOffset + numClasses;
+			int zerosOffset = 0.0 <= cuts[f] ? leftOffset : rightOffset;
+			int countedOffset = zerosOffset == leftOffset ? rightOffset : leftOffset;
+			
+			for( int c = 0; c < numClasses; c++ ){
+				contingency[zerosOffset + c] = nodeCounts[c] - contingency[countedOffset + c];
+			}
+			
+			double score = splitScore(contingency, leftOffset, rightOffset);
+			
+			if( score < bestScore || best == -1 ||
+				(score == bestScore && candidates[f] < candidates[best]) ){
+				bestScore = score;
+				best = f;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Find the range of each candidate, draw its cut and count the branches of
+	 * the cuts from the columns
+	 * 
+	 * @param start the beginning (inclusive) of the current range of examples
+	 * @param end the end (exclusive) of the current range of examples
+	 * @param numCandidates the number of candidates in candidates
+	 */
+	private void countRandomDense(int start, int end, int numCandidates){
+		for( int i = start; i < end; i++ ){
+			int d = examples[i];
+			nodeCounts[classIds[d]] += weights[d];
+			
+			for( int f = 0; f < numCandidates; f++ ){
+				widenRange(f, columns[candidates[f]][d]);
+			}
+		}
+		
+		drawCuts(numCandidates);
+		
+		for( int i = start; i < end; i++ ){
+			int d = examples[i];
+			int c = classIds[d];
+			int w = weights[d];
+			
+			for( int f = 0; f < numCandidates; f++ ){
+				countCut(f, columns[candidates[f]][d], c, w);
+			}
+		}
+	}
+	
+	/**
+	 * Find the range of each candidate, draw its cut and count the branches of
+	 * the cuts from the sparse index, walking either the postings of the
+	 * candidates or the non-zero features of the node's examples (like
+	 * countSparse).  Only the non-zero values are visited: a candidate's range
+	 * includes 0 if it has fewer non-zero values than there are examples in the
+	 * node, and the zeros all go down the same branch, which isn't counted.
+	 * 
+	 * @param start the beginning (inclusive) of the current range of examples
+	 * @param end the end (exclusive) of the current range of examples
+	 * @param numCandidates the number of candidates in candidates
 	 */
-	private ArrayList<Example>[] splitData(ArrayList<Example> data, int featureIndex){
-		// split the data based on this feature
-		ArrayList<Example>[] splits = new ArrayList[2];
-		splits[0] = new ArrayList<Example>();
-		splits[1] = new ArrayList<Example>();
+	private void countRandomSparse(int start, int end, int numCandidates){
+		int[] postings = sparse.getPostings();
+		double[] postingValues = sparse.getPostingValues();
+		int[] rowFeatures = sparse.getRowFeatures();
+		double[] rowValues = sparse.getRowValues();
+		long rowCost = 0;
+		long postingsCost = 0;
+		int nodeStamp = nextStamp();
+		
+		for( int i = start; i < end; i++ ){
+			int d = examples[i];
+			nodeCounts[classIds[d]] += weights[d];
+			rowCost += sparse.getRowStart(d+1) - sparse.getRowStart(d);
+			mark[d] = nodeStamp;
+		}
+		
+		for( int f = 0; f < numCandidates; f++ ){
+			postingsCost += sparse.getPostingsStart(candidates[f]+1) - sparse.getPostingsStart(candidates[f]);
+			nonZeros[f] = 0;
+		}
+		
+		boolean usePostings = postingsCost < rowCost;
+		
+		if( usePostings ){
+			for( int f = 0; f < numCandidates; f++ ){
+				int last = sparse.getPostingsStart(candidates[f]+1);
 				
-		for( Example d: data){
-			double value = d.getFeature(featureIndex);
+				for( int p = sparse.getPostingsStart(candidates[f]); p < last; p++ ){
+					if( mark[postings[p]] == nodeStamp ){
+						nonZeros[f]++;
+						widenRange(f, postingValues[p]);
+					}
+				}
+			}
+		}else{
+			for( int f = 0; f < numCandidates; f++ ){
+				candidatePosition[candidates[f]] = f;
+			}
 			
-			if( value == DecisionTreeNode.LEFT_BRANCH ){
-				splits[0].add(d);
+			for( int i = start; i < end; i++ ){
+				int d = examples[i];
+				int last = sparse.getRowStart(d+1);
+				
+				for( int p = sparse.getRowStart(d); p < last; p++ ){
+					int f = candidatePosition[rowFeatures[p]];
+					
+					if( f >= 0 ){
+						nonZeros[f]++;
+						widenRange(f, rowValues[p]);
+					}
+				}
+			}
+		}
+		
+		for( int f = 0; f < numCandidates; f++ ){
+			if( nonZeros[f] < end-start ){
+				widenRange(f, 0.0);
+			}
+		}
+		
+		drawCuts(numCandidates);
+		
+		if( usePostings ){
+			for( int f = 0; f < numCandidates; f++ ){
+				int last = sparse.getPostingsStart(candidates[f]+1);
+				
+				for( int p = sparse.getPostingsStart(candidates[f]); p < last; p++ ){
+					int d = postings[p];
+					
+					if( mark[d] == nodeStamp ){
+						countCut(f, postingValues[p], classIds[d], weights[d]);
+					}
+				}
+			}
+		}else{
+			for( int i = start; i < end; i++ ){
+				int d = examples[i];
+				int c = classIds[d];
+				int w = weights[d];
+				int last = sparse.getRowStart(d+1);
+				
+				for( int p = sparse.getRowStart(d); p < last; p++ ){
+					int f = candidatePosition[rowFeatures[p]];
+					
+					if( f >= 0 ){
+						countCut(f, rowValues[p], c, w);
+					}
+				}
+			}
+			
+			for( int f = 0; f < numCandidates; f++ ){
+				candidatePosition[candidates[f]] = -1;
+			}
+		}
+	}
+	
+	/**
+	 * @param candidate a position in candidates
+	 * @param value a value of the candidate in the node
+	 */
+	private void widenRange(int candidate, double value){
+		if( value < candidateMin[candidate] ){
+			candidateMin[candidate] = value;
+		}
+		if( value > candidateMax[candidate] ){
+			candidateMax[candidate] = value;
+		}
+	}
+	
+	/**
+	 * Draw a cut uniformly between the smallest and largest value of each
+	 * candidate, or NaN if the candidate only takes on one value
+	 * 
+	 * @param numCandidates the number of candidates in candidates
+	 */
+	private void drawCuts(int numCandidates){
+		for( int f = 0; f < numCandidates; f++ ){
+			if( candidateMin[f] < candidateMax[f] ){
+				double cut = candidateMin[f] + rand.nextDouble()*(candidateMax[f]-candidateMin[f]);
+				
+				// rounding can land the cut on the largest value, which wouldn't split anything
+				cuts[f] = cut < candidateMax[f] ? cut : candidateMin[f];
+			}else{
+				cuts[f] = Double.NaN;
+			}
+		}
+	}
+	
+	/**
+	 * Count an example in the contingency table for a cut, unless it goes down
+	 * the same branch as the zeros
+	 * 
+	 * @param candidate a position in candidates
+	 * @param value the example's value for the candidate
+	 * @param classId the example's class id
+	 * @param weight the example's weight
+	 */
+	private void countCut(int candidate, double value, int classId, int weight){
+		boolean left = value <= cuts[candidate];
+		
+		if( left != (0.0 <= cuts[candidate]) ){
+			contingency[(candidate*2 + (left ? 0 : 1))*numClasses + classId] += weight;
+		}
+	}
+	
+	/**
+	 * Split the range of examples in place so that the examples with a value for
+	 * featureIndex <= threshold come first.
+	 * 
+	 * @param start the beginning (inclusive) of the range of examples to be split
+	 * @param end the end (exclusive) of the range of examples to be split
+	 * @param featureIndex the feature to split on
+	 * @param threshold the largest value that goes down the left branch
+	 * @return the index where the right branch examples start
+	 */
+	private int splitThreshold(int start, int end, int featureIndex, double threshold){
+		if( sparse != null ){
+			return splitThresholdSparse(start, end, featureIndex, threshold);
+		}
+		
+		double[] column = columns[featureIndex];
+		int mid = start;
+		int last = end-1;
+		
+		while( mid <= last ){
+			if( column[examples[mid]] <= threshold ){
+				mid++;
+			}else{
+				int temp = examples[mid];
+				examples[mid] = examples[last];
+				examples[last] = temp;
+				last--;
+			}
+		}
+		
+		return mid;
+	}
+	
+	/**
+	 * splitThreshold for sparse data: the examples that don't go down the same
+	 * branch as the zeros are found from the feature's postings.
+	 * 
+	 * @param start the beginning (inclusive) of the range of examples to be split
+	 * @param end the end (exclusive) of the range of examples to be split
+	 * @param featureIndex the feature to split on
+	 * @param threshold the largest value that goes down the left branch
+	 * @return the index where the right branch examples start
+	 */
+	private int splitThresholdSparse(int start, int end, int featureIndex, double threshold){
+		int[] postings = sparse.getPostings();
+		double[] postingValues = sparse.getPostingValues();
+		boolean zerosLeft = 0.0 <= threshold;
+		int movedStamp = nextStamp();
+		int lastPosting = sparse.getPostingsStart(featureIndex+1);
+		
+		for( int p = sparse.getPostingsStart(featureIndex); p < lastPosting; p++ ){
+			if( (postingValues[p] <= threshold) != zerosLeft ){
+				mark[postings[p]] = movedStamp;
+			}
+		}
+		
+		int mid = start;
+		int last = end-1;
+		
+		while( mid <= last ){
+			if( (mark[examples[mid]] == movedStamp) != zerosLeft ){
+				mid++;
+			}else{
+				int temp = examples[mid];
+				examples[mid] = examples[last];
+				examples[last] = temp;
+				last--;
+			}
+		}
+		
+		return mid;
+	}
+	
+	/**
+	 * @param counts label counts
+	 * @param offset where the counts (indexed by class id) start in counts
+	 * @param numClasses the number of class ids
+	 * @return the class id with the largest count (the smallest id on ties)
+	 */
+	static int argMax(int[] counts, int offset, int numClasses){
+		int max = 0;
+		
+		for( int c = 1; c < numClasses; c++ ){
+			if( counts[offset + c] > counts[offset + max] ){
+				max = c;
+			}
+		}
+		
+		return max;
+	}
+	
+	/**
+	 * Split the range of examples based on featureIndex.  The range is partitioned
+	 * in place so that the left branch examples come first.
+	 * 
+	 * @param start the beginning (inclusive) of the range of examples to be split
+	 * @param end the end (exclusive) of the range of examples to be split
+	 * @param featureIndex the feature to split on
+	 * @return the index where the right branch examples start.  The left branch is
+	 * [start, mid) and the right branch is [mid, end).
+	 */
+	private int splitData(int start, int end, int featureIndex){
+		if( sparse != null ){
+			return splitSparse(start, end, featureIndex);
+		}
+		
+		double[] column = columns[featureIndex];
+		int mid = start;
+		int last = end-1;
+		
+		while( mid <= last ){
+			if( column[examples[mid]] == DecisionTreeNode.LEFT_BRANCH ){
+				mid++;
+			}else{
+				int temp = examples[mid];
+				examples[mid] = examples[last];
+				examples[last] = temp;
+				last--;
+			}
+		}
+		
+		return mid;
+	}
+	
+	/**
+	 * splitData for sparse data: the examples with a non-zero value for the
+	 * feature are found from its postings.
+	 * 
+	 * @param start the beginning (inclusive) of the range of examples to be split
+	 * @param end the end (exclusive) of the range of examples to be split
+	 * @param featureIndex the feature to split on
+	 * @return the index where the right branch examples start
+	 */
+	private int splitSparse(int start, int end, int featureIndex){
+		int[] postings = sparse.getPostings();
+		int rightStamp = nextStamp();
+		int lastPosting = sparse.getPostingsStart(featureIndex+1);
+		
+		for( int p = sparse.getPostingsStart(featureIndex); p < lastPosting; p++ ){
+			mark[postings[p]] = rightStamp;
+		}
+		
+		int mid = start;
+		int last = end-1;
+		
+		while( mid <= last ){
+			if( mark[examples[mid]] != rightStamp ){
+				mid++;
 			}else{
-				splits[1].add(d);
+				int temp = examples[mid];
+				examples[mid] = examples[last];
+				examples[last] = temp;
+				last--;
 			}
 		}
 		
-		return splits;
+		return mid;
 	}
 	
 	public String toString(){
@@ -208,43 +1161,167 @@ public class DecisionTreeClassifier implements Classifier{
 			}
 		}
 		
-		return new DataMajority(maxLabel, maxCount, ((double)maxCount)/data.size());
+		return new DataMajority(maxLabel, maxCount, data.size());
+	}
+	
+	/**
+	 * given a range of the training examples, calculate the majority label and
+	 * how many times it occurs
+	 * 
+	 * @param start the beginning (inclusive) of the range of examples
+	 * @param end the end (exclusive) of the range of examples
+	 * @return majority information from the data
+	 */
+	private DataMajority getMajorityLabel(int start, int end){
+		Arrays.fill(nodeCounts, 0);
+		int total = 0;
+		
+		for( int i = start; i < end; i++ ){
+			int d = examples[i];
+			nodeCounts[classIds[d]] += weights[d];
+			total += weights[d];
+		}
+		
+		int majority = argMax(nodeCounts, 0, numClasses);
+		int maxCount = nodeCounts[majority];
+		
+		DataMajority result = new DataMajority(classLabels[majority], maxCount, total);
+		result.classCounts = nodeCounts.clone();
+		return result;
 	}
 		
 	@Override
 	public double classify(Example example) {
-		return findLeaf(example).prediction();
+		return flatTree.getValue(flatTree.findLeaf(example));
 	}
 	
 	@Override
 	public double confidence(Example example) {
-		return findLeaf(example).confidence();
+		return flatTree.getConfidence(flatTree.findLeaf(example));
 	}
 	
 	/**
-	 * Figure out which leaf this example falls into
+	 * Get the probability of each class for an example: the fraction of the
+	 * training examples at its leaf in each class.
 	 * 
 	 * @param example
-	 * @return the leaf node
+	 * @param probabilities filled in with the probabilities, indexed by class id
+	 * (see getClassLabels), so it can be reused from example to example
 	 */
-	private DecisionTreeNode findLeaf(Example example){
-		DecisionTreeNode current = decisionTree;
+	public void predictProba(Example example, double[] probabilities) {
+		if( probabilities.length < classLabels.length ){
+			throw new IllegalArgumentException("Need room for " + classLabels.length + " probabilities but got " + probabilities.length);
+		}
 		
-		while( !current.isLeaf() ){
-			int feature = current.getFeatureIndex();
-			
-			if( example.getFeature(feature) == DecisionTreeNode.LEFT_BRANCH ){
-				// go left
-				current = current.getLeft();
-			}else{
-				current = current.getRight();
-			}
+		Arrays.fill(probabilities, 0, classLabels.length, 0.0);
+		flatTree.addClassProbabilities(flatTree.findLeaf(example), probabilities, 0);
+	}
+	
+	/**
+	 * @param example
+	 * @return the probability of each class for the example, indexed by class
+	 * id (see predictProba(Example, double[]))
+	 */
+	public double[] predictProba(Example example) {
+		double[] probabilities = new double[classLabels.length];
+		predictProba(example, probabilities);
+		return probabilities;
+	}
+	
+	/**
+	 * Get the probability of each class for all of the examples in a data set
+	 * 
+	 * @param data
+	 * @return the probabilities, [example*number of classes + class id]
+	 */
+	public double[] predictProbaBatch(DataSet data) {
+		BatchExamples examples = new BatchExamples(data);
+		double[] probabilities = new double[data.size()*classLabels.length];
+		
+		for( int i = 0; i < data.size(); i++ ){
+			flatTree.addClassProbabilities(examples.findLeaf(flatTree, i), probabilities, i*classLabels.length);
 		}
 		
-		return current;
+		return probabilities;
 	}
 	
+	@Override
+	public double[] classifyBatch(DataSet data) {
+		return classifyBatch(new BatchExamples(data));
+	}
+	
+	@Override
+	public double[] classifyBatch(DataSet data, int[] rows) {
+		return classifyBatch(new BatchExamples(data, rows));
+	}
+	
+	/**
+	 * @param examples
+	 * @return the predicted class label for each example of the batch
+	 */
+	private double[] classifyBatch(BatchExamples examples) {
+		double[] predictions = new double[examples.size()];
 		
+		for( int i = 0; i < predictions.length; i++ ){
+			predictions[i] = flatTree.getValue(examples.findLeaf(flatTree, i));
+		}
+		
+		return predictions;
+	}
+	
+	@Override
+	public double[] confidenceBatch(DataSet data) {
+		BatchExamples examples = new BatchExamples(data);
+		double[] confidences = new double[data.size()];
+		
+		for( int i = 0; i < confidences.length; i++ ){
+			confidences[i] = flatTree.getConfidence(examples.findLeaf(flatTree, i));
+		}
+		
+		return confidences;
+	}
+	
+	/**
+	 * Save the learned tree to a binary model file, which can be opened with
+	 * MappedForestClassifier.
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void save(String filename) throws IOException{
+		ForestModelFile.write(filename, ForestModelFile.TREE, classLabels, Collections.singletonList(flatTree));
+	}
+	
+	/**
+	 * @return the training labels, in class id order
+	 */
+	public double[] getClassLabels(){
+		return classLabels.clone();
+	}
+	
+	/**
+	 * @return the learned tree compiled into arrays
+	 */
+	public FlatDecisionTree getFlatTree(){
+		return flatTree;
+	}
+	
+	/**
+	 * The best cut of the histograms of a node so far (see sweepBins)
+	 */
+	static class BinSplit {
+		int featureIndex = -1; // -1 until a cut separates the examples
+		int lastLeftBin;
+		double score = Double.POSITIVE_INFINITY; // lower is better
+		int[] branchCounts; // the left then the right branch label counts of the cut
+		int[] sweepCounts; // the same, for the cut being scored
+		
+		BinSplit(int numClasses){
+			branchCounts = new int[2*numClasses];
+			sweepCounts = new int[2*numClasses];
+		}
+	}
+	
 	/**
 	 * A container class to allow us to return multiple values when calculting
 	 * the majority label from a collection of data.
@@ -257,13 +1334,28 @@ public class DecisionTreeClassifier implements Classifier{
 		public int majorityCount;
 		public double confidence;
 		
+		public int totalCount;
+		public int[] classCounts; // indexed by class id, only for the ranges of training examples
+		
 		public DataMajority(double majorityLabel, int majorityCount, double confidence){
 			this.majorityLabel = majorityLabel;
 			this.majorityCount = majorityCount;
 			this.confidence = confidence;
 		}
+		
+		public DataMajority(double majorityLabel, int majorityCount, int totalCount){
+			this(majorityLabel, majorityCount, ((double)majorityCount)/totalCount);
+			this.totalCount = totalCount;
+		}
 	}
 	
+	/**
+	 * Split each node on the best of a random cut of mtry features (see
+	 * setMtry) instead of searching for the best split.  Takes the place of
+	 * histogram splits when both are turned on.
+	 * 
+	 * @param extraTrees
+	 */
 	public void setExtraTrees(boolean extraTrees) {
 		this.extraTrees = extraTrees;
 	}
@@ -271,4 +1363,60 @@ public class DecisionTreeClassifier implements Classifier{
 	public void setFeatureBagging(boolean featureBagging) {
 		this.featureBagging = featureBagging;
 	}
+	
+	/**
+	 * Split on thresholds found from per-bin label histograms instead of on
+	 * zero vs. non-zero.  Needed to make good use of continuous features.
+	 * Ignored for sparse data (see SPARSE_DENSITY), which isn't binned.
+	 * 
+	 * @param histogramSplits
+	 */
+	public void setHistogramSplits(boolean histogramSplits) {
+		this.histogramSplits = histogramSplits;
+	}
+	
+	/**
+	 * Set how splits are scored: ERROR (the default), GINI or ENTROPY
+	 * 
+	 * @param splitCriterion
+	 */
+	public void setSplitCriterion(int splitCriterion) {
+		if( splitCriterion < ERROR || splitCriterion > ENTROPY ){
+			throw new IllegalArgumentException("Unknown split criterion: " + splitCriterion);
+		}
+		
+		this.splitCriterion = splitCriterion;
+	}
+	
+	/**
+	 * Set how many features feature bagging and extra trees draw at each node
+	 * 
+	 * @param mtry the number of features, or 0 for the square root of the number of features (the default)
+	 */
+	public void setMtry(int mtry) {
+		if( mtry < 0 ){
+			throw new IllegalArgumentException("mtry can't be negative: " + mtry);
+		}
+		
+		this.mtry = mtry;
+	}
+	
+	/**
+	 * Seed the random number generator used for feature bagging and extra trees
+	 * so that training is reproducible.  Each call to train starts over from
+	 * the seed.
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * @return the seed the random number generator starts from.  Unless setSeed
+	 * was called this is picked at random when the classifier is created.
+	 */
+	public long getSeed() {
+		return seed;
+	}
 }
@@ -22,10 +22,15 @@ public class DecisionTreeNode {
 	// only applicable for leaves
 	private double prediction = 0.0;
 	private double confidence = 0.0;
+	private double[] classProbabilities = null; // indexed by class id, if known
 	
 	// only applicable if it's an internal node
 	private int featureIndex;  // the index of the feature we're checking
 	
+	// for threshold splits, examples with value <= threshold go down the left branch
+	private boolean thresholdSplit = false;
+	private double threshold;
+	
 	private DecisionTreeNode left;
 	private DecisionTreeNode right;
 	
@@ -40,6 +45,19 @@ public class DecisionTreeNode {
 		this.confidence = confidence;
 	}
 	
+	/**
+	 * Create a leaf node with label "prediction" that also knows the fraction of
+	 * its training examples in each class
+	 * 
+	 * @param prediction the prediction for this leaf node
+	 * @param confidence
+	 * @param classProbabilities the fraction of the examples in each class, indexed by class id
+	 */
+	public DecisionTreeNode(double prediction, double confidence, double[] classProbabilities){
+		this(prediction, confidence);
+		this.classProbabilities = classProbabilities;
+	}
+	
 	/**
 	 * Create an internal node that splits on featureIndex
 	 * 
@@ -49,6 +67,20 @@ public class DecisionTreeNode {
 		leaf = false;
 		this.featureIndex = featureIndex;
 	}
+	
+	/**
+	 * Create an internal node that splits on featureIndex at threshold, i.e.
+	 * examples with a value <= threshold go left and the rest go right.
+	 * 
+	 * @param featureIndex
+	 * @param threshold
+	 */
+	public DecisionTreeNode(int featureIndex, double threshold){
+		leaf = false;
+		this.featureIndex = featureIndex;
+		this.thresholdSplit = true;
+		this.threshold = threshold;
+	}
 
 	/**
 	 * @return whether or not this node is a leaf
@@ -83,6 +115,20 @@ public class DecisionTreeNode {
 		return confidence;
 	}
 	
+	/**
+	 * Only valid if this node is a leaf.
+	 * 
+	 * @return the fraction of the training examples at this node in each class,
+	 * indexed by class id, or null if the leaf was created without them
+	 */
+	public double[] classProbabilities(){
+		if( !leaf ){
+			throw new RuntimeException("Can only call classProbabilities on a leaf node");
+		}
+		
+		return classProbabilities;
+	}
+	
 	/**
 	 * Set the left node of this node.
 	 * 
@@ -132,6 +178,36 @@ public class DecisionTreeNode {
 		return featureIndex;
 	}
 	
+	/**
+	 * @return whether this internal node splits on a threshold (rather than zero vs. non-zero)
+	 */
+	public boolean isThresholdSplit(){
+		return thresholdSplit;
+	}
+	
+	/**
+	 * Get the threshold that this internal node splits on.  Only valid for threshold splits.
+	 * 
+	 * @return
+	 */
+	public double getThreshold(){
+		if( !thresholdSplit ){
+			throw new RuntimeException("getThreshold can only be called on threshold split nodes");
+		}
+		
+		return threshold;
+	}
+	
+	/**
+	 * Decide which branch a feature value goes down at this internal node
+	 * 
+	 * @param value the value of the feature this node splits on
+	 * @return true if the value goes down the left branch, false for the right
+	 */
+	public boolean goesLeft(double value){
+		return thresholdSplit ? value <= threshold : value == LEFT_BRANCH;
+	}
+	
 	/**
 	 * Get a formatted string representation of this DecisionTreeNode and all nodes below it.
 	 * This basic version only prints out feature indices.
@@ -170,6 +246,10 @@ public class DecisionTreeNode {
 				featureString = headers.get(featureIndex);
 			}
 			
+			if( thresholdSplit ){
+				featureString += " <= " + threshold;
+			}
+			
 			return "(" + featureString + "\n" + 
 		            spaces + left.treeStringHelper(spaces + "  ", headers) + "\n" +
 					spaces + right.treeStringHelper(spaces + "  ", headers) + ")";
@@ -1,10 +1,19 @@
 package ml.classifiers;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
 import ml.classifiers.DecisionTreeClassifier;
 import ml.data.DataSet;
 import ml.data.Example;
-import ml.utils.HashMapCounter;
 
 /**
  * 
@@ -15,53 +24,552 @@ import ml.utils.HashMapCounter;
  * to classify a given example.
  *
  */
-public class EnsembleTreeClassifier implements Classifier {
+public class EnsembleTreeClassifier implements WeightedClassifier, Predictor {
 	private ArrayList<DecisionTreeClassifier> trees;
 	private int numTrees = 20;
 	private int depthLimit = 5;
 	private boolean featureBagging = false;
 	private boolean extraTrees = false;
+	private boolean histogramSplits = false;
+	private int splitCriterion = DecisionTreeClassifier.ERROR;
+	private int mtry = 0;
+	
+	// how many trees to train at once, and optionally the pool to train them on
+	private int parallelism = 1;
+	private ExecutorService executor = null;
+	
+	private final ForestSeed seed = new ForestSeed();
+	private boolean warmStart = false;
+	
+	// the labels seen in training, sorted, so votes can be counted by position
+	private double[] classLabels;
+	
+	// per-thread room for the votes and the summed class probabilities of an
+	// example, so classify and confidence don't allocate once a thread has used them
+	private final ThreadLocal<int[]> voteScratch = new ThreadLocal<int[]>();
+	private final ThreadLocal<double[]> probabilityScratch = new ThreadLocal<double[]>();
+	
+	// early exit: stop counting an example's votes once the trees that are left
+	// can't change the winner, and/or once the leading class has confidenceThreshold
+	// of the votes of at least confidenceMinTrees trees (0 for off)
+	private boolean earlyExit = false;
+	private double confidenceThreshold = 0;
+	private int confidenceMinTrees = 1;
+	
+	// how many trees classify and classifyBatch have evaluated, and for how many examples
+	private final LongAdder treesEvaluated = new LongAdder();
+	private final LongAdder examplesClassified = new LongAdder();
+	
+	// the seed each tree was trained with, which also regenerates its bootstrap sample
+	private long[] treeSeeds;
+	
+	// out-of-bag estimate, only computed if asked for
+	private boolean outOfBagEstimate = false;
+	private double[] oobPredictions;
+	private double oobAccuracy;
 
 	/**
 	 * Trains our random forest by training each decision tree
-	 * on random subsets of a dataset.
+	 * on random subsets of a dataset.  Every tree gets its own random
+	 * number generator, seeded up front, so a seeded forest comes out the
+	 * same no matter how many threads train it.
 	 * 
 	 * @param data data
 	 */
 	public void train(DataSet data) {
-		this.trees = new ArrayList<DecisionTreeClassifier>();
+		train(data, null);
+	}
+	
+	/**
+	 * Trains the forest on a weighted version of a data set, where example i
+	 * counts weights[i] times, e.g. the training folds of a cross-validation.
+	 * Each tree's bootstrap sample is drawn from the weighted examples, so the
+	 * examples with weight 0 are never used.
+	 * 
+	 * @param data data
+	 * @param weights the weight of each example, or null to weight all examples 1
+	 */
+	public void train(final DataSet data, final int[] weights) {
+		if (weights != null && weights.length != data.size())
+			throw new IllegalArgumentException("Expected " + data.size() + " weights but got " + weights.length);
+		
+		final int[] rows = weights == null ? null : weightedRows(weights);
+		
+		// with warm start, keep the trees that are already trained
+		int numKept = 0;
+		if (warmStart && this.trees != null) {
+			if (!Arrays.equals(classLabels, data.getClassLabels()))
+				throw new IllegalArgumentException("Warm start needs the same labels the forest was trained on");
+			numKept = Math.min(this.trees.size(), this.numTrees);
+		}
+		
+		// a warm start draws the new trees' seeds after the kept ones'
+		Random seeds = seed.start(numKept > 0);
+		ArrayList<Callable<DecisionTreeClassifier>> tasks = new ArrayList<Callable<DecisionTreeClassifier>>();
+		
+		// the trees train in parallel off the same columns (or sparse features),
+		// class ids and bins, so fill them in here rather than in the first tree
+		boolean useBins = DecisionTreeClassifier.useHistogramSplits(data, histogramSplits, extraTrees);
+		if (DecisionTreeClassifier.useSparseSplits(data, useBins))
+			data.getSparseFeatures();
+		else
+			data.getColumns();
+		data.getClassIds();
+		if (useBins)
+			data.getFeatureBins();
+		
+		classLabels = data.getClassLabels();
+		long[] keptSeeds = treeSeeds;
+		treeSeeds = new long[this.numTrees];
+		
 		for (int i = 0; i < this.numTrees; i++) {
-			DecisionTreeClassifier d = new DecisionTreeClassifier();
-			d.setDepthLimit(this.depthLimit);
-			d.setExtraTrees(extraTrees);
-			d.setFeatureBagging(featureBagging);
-			DataSet newData = data.createDatasetWithBagging();
-			d.train(newData);
-			this.trees.add(d);
+			// the kept trees' seeds are drawn too, so the new trees continue the
+			// stream and come out the same as if all of the trees were trained at once
+			final long treeSeed = seeds.nextLong();
+			if (i < numKept) {
+				treeSeeds[i] = keptSeeds[i];
+				continue;
+			}
+			treeSeeds[i] = treeSeed;
+			
+			tasks.add(new Callable<DecisionTreeClassifier>() {
+				public DecisionTreeClassifier call() {
+					return trainTree(data, treeSeed, rows);
+				}
+			});
+		}
+		
+		this.trees = numKept == 0 ? new ArrayList<DecisionTreeClassifier>() :
+			new ArrayList<DecisionTreeClassifier>(this.trees.subList(0, numKept));
+		
+		if (parallelism == 1 && executor == null) {
+			for (Callable<DecisionTreeClassifier> task : tasks) {
+				try {
+					this.trees.add(task.call());
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		} else {
+			ExecutorService pool = executor != null ? executor : new ForkJoinPool(parallelism);
+			
+			try {
+				for (Future<DecisionTreeClassifier> tree : pool.invokeAll(tasks))
+					this.trees.add(tree.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while training trees", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Error training tree", e.getCause());
+			} finally {
+				if (pool != executor)
+					pool.shutdown();
+			}
+		}
+		
+		oobPredictions = null;
+		if (outOfBagEstimate)
+			computeOutOfBag(data, rows);
+	}
+	
+	/**
+	 * @param weights the weight of each example
+	 * @return the index of each example, repeated as many times as its weight
+	 */
+	private static int[] weightedRows(int[] weights) {
+		int numRows = 0;
+		for (int weight : weights)
+			numRows += Math.max(weight, 0);
+		
+		if (numRows == 0)
+			throw new RuntimeException("Tried to train without any data");
+		
+		int[] rows = new int[numRows];
+		numRows = 0;
+		for (int i = 0; i < weights.length; i++)
+			for (int w = 0; w < weights[i]; w++)
+				rows[numRows++] = i;
+		return rows;
+	}
+	
+	/**
+	 * Estimates the accuracy of the forest on the training data by having
+	 * each example voted on only by the trees whose bootstrap sample left it
+	 * out.  The samples are regenerated from the tree seeds, so they never
+	 * need to be stored, and each tree is run over all of its out-of-bag
+	 * examples at once, like classifyBatch.  Examples that weren't part of the
+	 * weighted training data at all aren't estimated.
+	 * 
+	 * @param data the data the forest was trained on
+	 * @param rows the weighted rows the samples were drawn from, or null for all of them
+	 */
+	private void computeOutOfBag(DataSet data, int[] rows) {
+		BatchExamples examples = new BatchExamples(data);
+		int[] classIds = data.getClassIds();
+		int numExamples = data.size();
+		int numClasses = classLabels.length;
+		int[] votes = new int[numExamples * numClasses];
+		boolean[] inData = new boolean[numExamples];
+		
+		if (rows == null)
+			Arrays.fill(inData, true);
+		else
+			for (int row : rows)
+				inData[row] = true;
+		
+		for (int t = 0; t < this.trees.size(); t++) {
+			FlatDecisionTree tree = this.trees.get(t).getFlatTree();
+			int[] weights = bootstrapWeights(data, treeSeeds[t], rows);
+			for (int i = 0; i < numExamples; i++)
+				if (weights[i] == 0 && inData[i])
+					votes[i * numClasses + tree.getClassId(examples.findLeaf(tree, i))]++;
+		}
+		
+		oobPredictions = new double[numExamples];
+		int correct = 0, total = 0;
+		
+		for (int i = 0; i < numExamples; i++) {
+			int best = DecisionTreeClassifier.argMax(votes, i * numClasses, numClasses);
+			if (votes[i * numClasses + best] == 0) {
+				// in every tree's sample (or not in the data), so there's nothing to estimate with
+				oobPredictions[i] = Double.NaN;
+			} else {
+				oobPredictions[i] = classLabels[best];
+				if (best == classIds[i]) correct++;
+				total++;
+			}
 		}
+		
+		oobAccuracy = total == 0 ? Double.NaN : correct / (double) total;
+	}
+	
+	/**
+	 * Trains a single decision tree on a bootstrap sample of the data. The
+	 * sample is passed to the tree as weights, so the data is never copied.
+	 * 
+	 * @param data data
+	 * @param treeSeed seed for the bagging and the tree's own randomness
+	 * @param rows the weighted rows to sample from, or null for all of them
+	 * @return the trained tree
+	 */
+	private DecisionTreeClassifier trainTree(DataSet data, long treeSeed, int[] rows) {
+		Random rand = new Random(treeSeed);
+		DecisionTreeClassifier d = new DecisionTreeClassifier();
+		d.setDepthLimit(this.depthLimit);
+		d.setExtraTrees(extraTrees);
+		d.setFeatureBagging(featureBagging);
+		d.setHistogramSplits(histogramSplits);
+		d.setSplitCriterion(splitCriterion);
+		d.setMtry(mtry);
+		d.setSeed(rand.nextLong());
+		d.train(data, rows == null ? data.bootstrapWeights(rand) : data.bootstrapWeights(rand, rows));
+		return d;
 	}
+	
+	/**
+	 * Regenerates the bootstrap sample a tree was trained on.
+	 * 
+	 * @param data data
+	 * @param treeSeed the seed the tree was trained with
+	 * @param rows the weighted rows the sample was drawn from, or null for all of them
+	 * @return the weight of each example in the tree's sample
+	 */
+	private int[] bootstrapWeights(DataSet data, long treeSeed, int[] rows) {
+		// must draw from the generator in the same order as trainTree
+		Random rand = new Random(treeSeed);
+		rand.nextLong();
+		return rows == null ? data.bootstrapWeights(rand) : data.bootstrapWeights(rand, rows);
+	}
+
+	/**
+	 * The trees as ForestVote sees them, with the early exit rules
+	 */
+	private final ForestVote vote = new ForestVote() {
+		int getNumTrees() {
+			return trees.size();
+		}
+		
+		int getNumClasses() {
+			return classLabels.length;
+		}
+		
+		int findLeaf(int tree, Example example) {
+			return trees.get(tree).getFlatTree().findLeaf(example);
+		}
+		
+		int findLeaf(int tree, BatchExamples examples, int example) {
+			return examples.findLeaf(trees.get(tree).getFlatTree(), example);
+		}
+		
+		int getClassId(int tree, int leaf) {
+			return trees.get(tree).getFlatTree().getClassId(leaf);
+		}
+		
+		void addClassProbabilities(int tree, int leaf, double[] sums, int offset) {
+			trees.get(tree).getFlatTree().addClassProbabilities(leaf, sums, offset);
+		}
+		
+		boolean hasEarlyExit() {
+			return earlyExit || confidenceThreshold > 0;
+		}
+		
+		boolean canStopVoting(int[] votes, int offset, int evaluated) {
+			return EnsembleTreeClassifier.this.canStopVoting(votes, offset, evaluated);
+		}
+		
+		void countVotes(long numVotes, int numExamples) {
+			treesEvaluated.add(numVotes);
+			examplesClassified.add(numExamples);
+		}
+	};
 
 	/**
 	 * Classifies a given example using a majority vote from our 
-	 * decision trees. 
+	 * decision trees.  With early exit (see setEarlyExit and
+	 * setConfidenceThreshold) the vote stops as soon as it's settled.
 	 * 
 	 * @param example 
 	 */
 	public double classify(Example example) {
-		HashMapCounter<Double> counter = new HashMapCounter<Double>();
-		for (DecisionTreeClassifier d : this.trees)
-			counter.increment(d.classify(example));
-		return counter.sortedEntrySet().get(0).getKey();
+		return classLabels[vote.classify(example, voteScratch())];
 	}
 	
+	/**
+	 * Whether the vote for an example is settled, by the early exit rules that
+	 * are turned on
+	 * 
+	 * @param votes vote counts
+	 * @param offset where the counts for the example start
+	 * @param evaluated how many trees have voted so far
+	 * @return whether the rest of the trees can be skipped
+	 */
+	private boolean canStopVoting(int[] votes, int offset, int evaluated) {
+		int numClasses = classLabels.length;
+		int remaining = this.trees.size() - evaluated;
+		boolean checkThreshold = confidenceThreshold > 0 && evaluated >= confidenceMinTrees;
+		// the leader needs at least as many votes as are left, so at least half of them
+		boolean checkMargin = earlyExit && evaluated >= remaining;
+		if (!checkThreshold && !checkMargin)
+			return false;
+		
+		int leader = DecisionTreeClassifier.argMax(votes, offset, numClasses);
+		int leaderVotes = votes[offset + leader];
+		if (checkThreshold && leaderVotes >= confidenceThreshold * evaluated)
+			return true;
+		if (!checkMargin)
+			return false;
+		
+		// settled if no other class can catch up, even with all of the remaining votes
+		// (argMax breaks ties toward the smaller class id)
+		for (int c = 0; c < numClasses; c++) {
+			int mostVotes = votes[offset + c] + remaining;
+			if (c != leader && (mostVotes > leaderVotes || (mostVotes == leaderVotes && c < leader)))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return this thread's vote counts, cleared
+	 */
+	private int[] voteScratch() {
+		int[] votes = voteScratch.get();
+		if (votes == null || votes.length < classLabels.length) {
+			votes = new int[classLabels.length];
+			voteScratch.set(votes);
+		}
+		Arrays.fill(votes, 0, classLabels.length, 0);
+		return votes;
+	}
+	
+	/**
+	 * The probability of the class that wins the vote, averaged over the
+	 * trees' leaf class probabilities (see predictProba).
+	 * 
+	 * @param example
+	 */
 	public double confidence(Example example) {
-		return 0;
+		double[] probabilities = probabilityScratch.get();
+		if (probabilities == null || probabilities.length < classLabels.length) {
+			probabilities = new double[classLabels.length];
+			probabilityScratch.set(probabilities);
+		}
+		
+		Arrays.fill(probabilities, 0, classLabels.length, 0.0);
+		return vote.confidence(example, voteScratch(), probabilities);
+	}
+	
+	/**
+	 * Gets the probability of each class for an example by averaging the class
+	 * probabilities of the leaves it falls into, i.e. the fraction of each
+	 * tree's training examples at the leaf in each class.
+	 * 
+	 * @param example
+	 * @param probabilities filled in with the probabilities, indexed by class id
+	 * (see getClassLabels), so it can be reused from example to example
+	 */
+	public void predictProba(Example example, double[] probabilities) {
+		vote.predictProba(example, probabilities);
+	}
+	
+	/**
+	 * @param example
+	 * @return the probability of each class for the example, indexed by class
+	 * id (see predictProba(Example, double[]))
+	 */
+	public double[] predictProba(Example example) {
+		double[] probabilities = new double[classLabels.length];
+		predictProba(example, probabilities);
+		return probabilities;
+	}
+	
+	/**
+	 * Gets the probability of each class for all of the examples in a data
+	 * set, one tree at a time like classifyBatch.
+	 * 
+	 * @param data
+	 * @return the probabilities, [example * number of classes + class id]
+	 */
+	public double[] predictProbaBatch(DataSet data) {
+		return vote.predictProbaBatch(new BatchExamples(data));
+	}
+	
+	/**
+	 * Classifies all of the examples in a data set by majority vote, one tree
+	 * at a time (see ForestVote).  With early exit, each tree only runs over
+	 * the examples whose vote isn't settled yet.
+	 * 
+	 * @param data
+	 */
+	public double[] classifyBatch(DataSet data) {
+		return classifyBatch(new BatchExamples(data));
+	}
+	
+	/**
+	 * Classifies some of the examples in a data set, by index, like
+	 * classifyBatch(DataSet)
+	 * 
+	 * @param data
+	 * @param rows the indices of the examples to classify
+	 */
+	public double[] classifyBatch(DataSet data, int[] rows) {
+		return classifyBatch(new BatchExamples(data, rows));
+	}
+	
+	private double[] classifyBatch(BatchExamples examples) {
+		int[] classIds = vote.classifyBatch(examples);
+		double[] predictions = new double[classIds.length];
+		for (int i = 0; i < classIds.length; i++)
+			predictions[i] = classLabels[classIds[i]];
+		return predictions;
+	}
+	
+	/**
+	 * Gets the confidence (see confidence) of all of the examples in a data set,
+	 * one tree at a time like classifyBatch.
+	 * 
+	 * @param data
+	 */
+	public double[] confidenceBatch(DataSet data) {
+		return vote.confidenceBatch(new BatchExamples(data));
+	}
+
+	/**
+	 * Save the trained forest to a binary model file, which can be opened with
+	 * MappedForestClassifier.
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void save(String filename) throws IOException {
+		ArrayList<FlatDecisionTree> flatTrees = new ArrayList<FlatDecisionTree>();
+		for (DecisionTreeClassifier d : this.trees)
+			flatTrees.add(d.getFlatTree());
+		ForestModelFile.write(filename, ForestModelFile.FOREST, classLabels, flatTrees);
+	}
+
+	/**
+	 * Stop counting the votes for an example as soon as the trees that haven't
+	 * voted yet couldn't change the winner, even if they all voted for the same
+	 * class.  The predictions are exactly the same as without it.
+	 * 
+	 * @param earlyExit
+	 */
+	public void setEarlyExit(boolean earlyExit) {
+		this.earlyExit = earlyExit;
+	}
+	
+	/**
+	 * Stop counting the votes for an example once at least minTrees trees have
+	 * voted and the leading class has at least threshold of their votes.
+	 * Unlike setEarlyExit this can change predictions, in exchange for skipping
+	 * more trees.
+	 * 
+	 * @param threshold the fraction of the votes so far, or 0 to turn this off (the default)
+	 * @param minTrees how many trees have to vote before stopping early
+	 */
+	public void setConfidenceThreshold(double threshold, int minTrees) {
+		if (threshold < 0 || threshold > 1)
+			throw new IllegalArgumentException("Confidence threshold must be between 0 and 1: " + threshold);
+		if (minTrees < 1)
+			throw new IllegalArgumentException("Minimum number of trees must be at least 1: " + minTrees);
+		this.confidenceThreshold = threshold;
+		this.confidenceMinTrees = minTrees;
+	}
+	
+	/**
+	 * Get how many trees classify and classifyBatch have evaluated, summed over
+	 * the examples, since the last call to resetTreesEvaluated.  Without early
+	 * exit this is the number of trees times getExamplesClassified.
+	 * 
+	 * @return the number of trees evaluated
+	 */
+	public long getTreesEvaluated() {
+		return treesEvaluated.sum();
+	}
+	
+	/**
+	 * @return how many examples classify and classifyBatch have classified since
+	 * the last call to resetTreesEvaluated
+	 */
+	public long getExamplesClassified() {
+		return examplesClassified.sum();
+	}
+	
+	/**
+	 * Start counting the trees evaluated (and examples classified) over from 0
+	 */
+	public void resetTreesEvaluated() {
+		treesEvaluated.reset();
+		examplesClassified.reset();
+	}
+	
+	/**
+	 * @return the training labels, in class id order
+	 */
+	public double[] getClassLabels() {
+		return classLabels.clone();
 	}
 
 	public void setNumTrees(int numTrees) {
 		this.numTrees = numTrees;
 	}
 	
+	/**
+	 * Keep the trees that are already trained when train is called again,
+	 * e.g. after raising the number of trees, and only train the missing
+	 * ones (lowering it drops the last trees).  The new trees are seeded
+	 * from the same stream as the kept ones, so growing a seeded forest
+	 * gives the same trees as training it at full size in one go.  train must
+	 * be called with the same data (and weights) as before, and the new trees
+	 * are built with the current settings.
+	 * 
+	 * @param warmStart
+	 */
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+	}
+	
 	public void setDepthLimit(int newDepth) {
 		this.depthLimit = newDepth;
 	}
@@ -73,4 +581,107 @@ public class EnsembleTreeClassifier implements Classifier {
 	public void setExtraTrees(boolean extraTrees) {
 		this.extraTrees = extraTrees;
 	}
+	
+	public void setHistogramSplits(boolean histogramSplits) {
+		this.histogramSplits = histogramSplits;
+	}
+	
+	/**
+	 * Set how many features feature bagging and extra trees draw at each node (see
+	 * DecisionTreeClassifier.setMtry)
+	 * 
+	 * @param mtry the number of features, or 0 for the square root of the number of features
+	 */
+	public void setMtry(int mtry) {
+		if (mtry < 0)
+			throw new IllegalArgumentException("mtry can't be negative: " + mtry);
+		this.mtry = mtry;
+	}
+	
+	/**
+	 * Set how the trees score splits (see DecisionTreeClassifier.setSplitCriterion)
+	 * 
+	 * @param splitCriterion
+	 */
+	public void setSplitCriterion(int splitCriterion) {
+		if (splitCriterion < DecisionTreeClassifier.ERROR || splitCriterion > DecisionTreeClassifier.ENTROPY)
+			throw new IllegalArgumentException("Unknown split criterion: " + splitCriterion);
+		this.splitCriterion = splitCriterion;
+	}
+	
+	/**
+	 * Compute an out-of-bag estimate of the accuracy at the end of training
+	 * (see getOobAccuracy and getOobPredictions).
+	 * 
+	 * @param outOfBagEstimate
+	 */
+	public void setOutOfBagEstimate(boolean outOfBagEstimate) {
+		this.outOfBagEstimate = outOfBagEstimate;
+	}
+	
+	/**
+	 * Get the out-of-bag accuracy of the last training run, i.e. the accuracy
+	 * on the training examples when each one is only voted on by the trees
+	 * that didn't sample it.
+	 * 
+	 * @return the out-of-bag accuracy
+	 */
+	public double getOobAccuracy() {
+		if (oobPredictions == null)
+			throw new RuntimeException("Out-of-bag estimate not computed; call setOutOfBagEstimate(true) before training");
+		return oobAccuracy;
+	}
+	
+	/**
+	 * Get the out-of-bag prediction for each training example of the last
+	 * training run.  Examples that were sampled by every tree are NaN.
+	 * 
+	 * @return the out-of-bag predictions, in example order
+	 */
+	public double[] getOobPredictions() {
+		if (oobPredictions == null)
+			throw new RuntimeException("Out-of-bag estimate not computed; call setOutOfBagEstimate(true) before training");
+		return oobPredictions;
+	}
+	
+	/**
+	 * Set how many trees are trained at the same time.  Anything above 1
+	 * trains on a fork-join pool of that size (unless an executor is set).
+	 * 
+	 * @param parallelism number of threads to train with
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Train the trees on the given executor instead of creating a pool for
+	 * each call to train.  The executor is not shut down afterwards.
+	 * 
+	 * @param executor executor to train on, or null to go back to the default
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Seed the forest so that training is reproducible.
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed.set(seed);
+	}
+	
+	/**
+	 * Get the seed of the last training run.  For an unseeded forest this is
+	 * picked at random by train, and passing it to setSeed repeats the run.
+	 * 
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return seed.get();
+	}
 }
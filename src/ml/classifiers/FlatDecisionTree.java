@@ -0,0 +1,273 @@
+package ml.classifiers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import ml.data.Example;
+import ml.data.SparseFeatures;
+
+/**
+ * A decision tree compiled into parallel primitive arrays for fast classification.
+ * 
+ * The nodes are laid out in breadth-first order and the two children of a node
+ * are always next to each other, so only the offset of the left child is stored
+ * (the right child is the next node).  Walking the tree is then a tight loop over
+ * a handful of arrays instead of chasing DecisionTreeNode references around the heap.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ * 
+ */
+public class FlatDecisionTree {
+	// marks a leaf in the feature array
+	public static final int LEAF = -1;
+	
+	// for each node: the feature it splits on (or LEAF), the threshold it splits at
+	// (NaN for zero vs. non-zero splits) and the offset of its left child.  For a
+	// leaf, left holds its leaf number instead.
+	private int[] feature;
+	private double[] threshold;
+	private int[] left;
+	
+	// for each leaf: the prediction, its class id and the confidence of the prediction
+	private double[] value;
+	private int[] classId;
+	private double[] confidence;
+	
+	// the class probabilities of each leaf, [leaf number*numClasses + class id]
+	private int numClasses;
+	private int numLeaves;
+	private double[] classProbabilities;
+	
+	/**
+	 * Compile the tree rooted at root.  Leaves that weren't created with class
+	 * probabilities give all of the probability to their prediction.
+	 * 
+	 * @param root
+	 * @param classLabels the labels of the training data by class id (see DataSet.getClassLabels())
+	 */
+	public FlatDecisionTree(DecisionTreeNode root, double[] classLabels){
+		// number the nodes breadth-first
+		ArrayList<DecisionTreeNode> nodes = new ArrayList<DecisionTreeNode>();
+		nodes.add(root);
+		
+		for( int i = 0; i < nodes.size(); i++ ){
+			DecisionTreeNode node = nodes.get(i);
+			
+			if( !node.isLeaf() ){
+				nodes.add(node.getLeft());
+				nodes.add(node.getRight());
+			}
+		}
+		
+		int size = nodes.size();
+		numClasses = classLabels.length;
+		numLeaves = (size+1)/2;
+		classProbabilities = new double[numLeaves*numClasses];
+		feature = new int[size];
+		threshold = new double[size];
+		left = new int[size];
+		value = new double[size];
+		classId = new int[size];
+		confidence = new double[size];
+		
+		int nextChild = 1;
+		int nextLeaf = 0;
+		
+		for( int i = 0; i < size; i++ ){
+			DecisionTreeNode node = nodes.get(i);
+			
+			if( node.isLeaf() ){
+				feature[i] = LEAF;
+				value[i] = node.prediction();
+				classId[i] = Arrays.binarySearch(classLabels, value[i]);
+				confidence[i] = node.confidence();
+				left[i] = nextLeaf;
+				
+				if( node.classProbabilities() != null ){
+					System.arraycopy(node.classProbabilities(), 0, classProbabilities, nextLeaf*numClasses, numClasses);
+				}else if( classId[i] >= 0 ){
+					classProbabilities[nextLeaf*numClasses + classId[i]] = 1.0;
+				}
+				
+				nextLeaf++;
+			}else{
+				feature[i] = node.getFeatureIndex();
+				threshold[i] = node.isThresholdSplit() ? node.getThreshold() : Double.NaN;
+				left[i] = nextChild;
+				nextChild += 2;
+			}
+		}
+	}
+	
+	/**
+	 * Figure out which leaf this example falls into
+	 * 
+	 * @param example
+	 * @return the offset of the leaf
+	 */
+	public int findLeaf(Example example){
+		int node = 0;
+		
+		while( feature[node] != LEAF ){
+			node = left[node] + (goesLeft(node, example.getFeature(feature[node])) ? 0 : 1);
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Figure out which leaf an example falls into, reading its features from
+	 * column-major data (see DataSet.getColumns()).  Features past the end of
+	 * the columns are treated as 0.0.
+	 * 
+	 * @param columns the feature columns, indexed by feature index
+	 * @param example the index of the example in the columns
+	 * @return the offset of the leaf
+	 */
+	public int findLeaf(double[][] columns, int example){
+		int node = 0;
+		
+		while( feature[node] != LEAF ){
+			int f = feature[node];
+			double featureValue = f < columns.length ? columns[f][example] : 0.0;
+			node = left[node] + (goesLeft(node, featureValue) ? 0 : 1);
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Figure out which leaf an example falls into, reading its features from
+	 * its row of non-zero values (see DataSet.getSparseFeatures()), for data
+	 * that's too sparse to keep in columns
+	 * 
+	 * @param rows the non-zero values of the examples
+	 * @param example the index of the example
+	 * @return the offset of the leaf
+	 */
+	public int findLeaf(SparseFeatures rows, int example){
+		int node = 0;
+		
+		while( feature[node] != LEAF ){
+			node = left[node] + (goesLeft(node, rows.getValue(example, feature[node])) ? 0 : 1);
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * @param node an internal node
+	 * @param featureValue the value of the feature the node splits on
+	 * @return whether the value goes down the left branch of the node
+	 */
+	private boolean goesLeft(int node, double featureValue){
+		double t = threshold[node];
+		
+		// NaN != NaN, which marks the zero vs. non-zero splits
+		return t == t ? featureValue <= t : featureValue == DecisionTreeNode.LEFT_BRANCH;
+	}
+	
+	/**
+	 * @param leaf the offset of a leaf
+	 * @return the prediction at the leaf
+	 */
+	public double getValue(int leaf){
+		return value[leaf];
+	}
+	
+	/**
+	 * @param leaf the offset of a leaf
+	 * @return the class id (in the training data) of the prediction at the leaf
+	 */
+	public int getClassId(int leaf){
+		return classId[leaf];
+	}
+	
+	/**
+	 * @param leaf the offset of a leaf
+	 * @return the confidence at the leaf
+	 */
+	public double getConfidence(int leaf){
+		return confidence[leaf];
+	}
+	
+	/**
+	 * @param leaf the offset of a leaf
+	 * @param classId a class id
+	 * @return the fraction of the leaf's training examples in the class
+	 */
+	public double getClassProbability(int leaf, int classId){
+		return classProbabilities[left[leaf]*numClasses + classId];
+	}
+	
+	/**
+	 * Add the class probabilities of a leaf to running sums, e.g. to average
+	 * them over the trees of a forest
+	 * 
+	 * @param leaf the offset of a leaf
+	 * @param sums the sums, indexed by class id from offset
+	 * @param offset where the sums start in sums
+	 */
+	public void addClassProbabilities(int leaf, double[] sums, int offset){
+		int row = left[leaf]*numClasses;
+		
+		for( int c = 0; c < numClasses; c++ ){
+			sums[offset + c] += classProbabilities[row + c];
+		}
+	}
+	
+	/**
+	 * @return the number of nodes (internal and leaf) in the tree
+	 */
+	public int size(){
+		return feature.length;
+	}
+	
+	/**
+	 * @return the number of leaves in the tree
+	 */
+	public int getNumLeaves(){
+		return numLeaves;
+	}
+	
+	/**
+	 * @return the number of classes the leaves have probabilities for
+	 */
+	public int getNumClasses(){
+		return numClasses;
+	}
+	
+	/**
+	 * Write the nodes in the model file layout (see ForestModelFile): a 16 byte
+	 * record per node, in node order.  Internal nodes hold their feature, the
+	 * offset of their left child and their threshold, leaves hold LEAF, their
+	 * class id, their leaf number and 4 reserved bytes.  Then come the class
+	 * probabilities of the leaves (double), in leaf number order.
+	 * 
+	 * @param out where to write the nodes, which must have room for
+	 * 16*size() + 8*getNumLeaves()*getNumClasses() bytes
+	 */
+	void write(ByteBuffer out){
+		for( int node = 0; node < feature.length; node++ ){
+			out.putInt(feature[node]);
+			
+			if( feature[node] == LEAF ){
+				if( classId[node] < 0 ){
+					throw new IllegalStateException("Leaf " + node + " predicts " + value[node] + ", which isn't a training label");
+				}
+				
+				out.putInt(classId[node]);
+				out.putInt(left[node]);
+				out.putInt(0);
+			}else{
+				out.putInt(left[node]);
+				out.putDouble(threshold[node]);
+			}
+		}
+		
+		for( double probability: classProbabilities ){
+			out.putDouble(probability);
+		}
+	}
+}
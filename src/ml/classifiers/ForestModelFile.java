@@ -0,0 +1,94 @@
+package ml.classifiers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Binary file format for trained trees and forests (see
+ * DecisionTreeClassifier.save, EnsembleTreeClassifier.save and
+ * MappedForestClassifier).
+ * 
+ * All values are little-endian and everything after the labels starts on an 8 byte
+ * boundary.  The file starts with a header:
+ * 
+ * magic (int), version (int), kind (int, TREE or FOREST), number of classes (int),
+ * the labels (double) in class id order, number of trees (int), reserved (int).
+ * 
+ * Then comes each tree: its number of nodes (int), its number of leaves (int), a
+ * 16 byte record per node in FlatDecisionTree order and the class probabilities
+ * of each leaf (see FlatDecisionTree.write).
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+class ForestModelFile {
+	public static final int MAGIC = 0x444d4652; // "RFMD" in little-endian
+	public static final int VERSION = 1;
+	
+	// kinds of model
+	public static final int TREE = 0; // a single tree: predicts the leaf label with the leaf confidence
+	public static final int FOREST = 1; // majority vote of the trees, with their average class probabilities
+	
+	public static final int HEADER_SIZE = 16;
+	public static final int NODE_SIZE = 16;
+	
+	/**
+	 * Write trees to a model file
+	 * 
+	 * @param filename
+	 * @param kind TREE or FOREST
+	 * @param classLabels the training labels by class id
+	 * @param trees
+	 * @throws IOException
+	 */
+	public static void write(String filename, int kind, double[] classLabels, List<FlatDecisionTree> trees) throws IOException{
+		long size = HEADER_SIZE + 8L*classLabels.length + 8;
+		
+		for( FlatDecisionTree tree: trees ){
+			size += 8 + (long)NODE_SIZE*tree.size() + 8L*tree.getNumLeaves()*classLabels.length;
+		}
+		
+		if( size > Integer.MAX_VALUE ){
+			throw new IOException("Model is too large to write: " + size + " bytes");
+		}
+		
+		ByteBuffer out = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(kind);
+		out.putInt(classLabels.length);
+		
+		for( double label: classLabels ){
+			out.putDouble(label);
+		}
+		
+		out.putInt(trees.size());
+		out.putInt(0);
+		
+		for( FlatDecisionTree tree: trees ){
+			if( tree.getNumClasses() != classLabels.length ){
+				throw new IllegalArgumentException("Tree has " + tree.getNumClasses() + " classes but the model has " + classLabels.length);
+			}
+			
+			out.putInt(tree.size());
+			out.putInt(tree.getNumLeaves());
+			tree.write(out);
+		}
+		
+		out.flip();
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		try{
+			while( out.hasRemaining() ){
+				channel.write(out);
+			}
+		}finally{
+			channel.close();
+		}
+	}
+}
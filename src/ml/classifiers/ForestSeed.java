@@ -0,0 +1,47 @@
+package ml.classifiers;
+
+import java.util.Random;
+
+/**
+ * The seed a forest trains from, which it draws the seeds of its trees from.
+ * A forest that was never given one picks a new seed at random for each
+ * training run and keeps it, so passing get() to set() repeats the run.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+class ForestSeed {
+	private long seed;
+	private boolean seeded = false;
+	
+	/**
+	 * Train from this seed from now on
+	 * 
+	 * @param seed
+	 */
+	void set(long seed){
+		this.seed = seed;
+		this.seeded = true;
+	}
+	
+	/**
+	 * @return the seed of the last training run
+	 */
+	long get(){
+		return seed;
+	}
+	
+	/**
+	 * Start a training run
+	 * 
+	 * @param sameRun whether this continues the last run (e.g. a warm start),
+	 * which keeps its seed even if it was picked at random
+	 * @return the stream of seeds for the run
+	 */
+	Random start(boolean sameRun){
+		if( !seeded && !sameRun ){
+			seed = new Random().nextLong();
+		}
+		
+		return new Random(seed);
+	}
+}
@@ -0,0 +1,273 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+
+import ml.data.Example;
+
+/**
+ * The voting and probability averaging of a forest, shared by the forests that
+ * keep their trees in different forms (EnsembleTreeClassifier,
+ * StreamingForestClassifier and MappedForestClassifier).  Each one says how to
+ * find the leaf an example falls into in one of its trees and what the leaf
+ * holds; the prediction is the class with the most votes (the smaller class id
+ * on ties) and the probabilities are the leaf class probabilities averaged over
+ * the trees.
+ * 
+ * The batch methods run each tree over all of the examples before moving on to
+ * the next one, so that the tree's nodes stay in cache, and count the votes in a
+ * single [example*number of classes + class id] array.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+abstract class ForestVote {
+	/**
+	 * @return the number of trees that vote
+	 */
+	abstract int getNumTrees();
+	
+	/**
+	 * @return the number of classes
+	 */
+	abstract int getNumClasses();
+	
+	/**
+	 * @param tree the number of a tree
+	 * @param example
+	 * @return the leaf of the tree the example falls into
+	 */
+	abstract int findLeaf(int tree, Example example);
+	
+	/**
+	 * @param tree the number of a tree
+	 * @param examples a batch of examples
+	 * @param example the index of the example in the batch
+	 * @return the leaf of the tree the example falls into
+	 */
+	abstract int findLeaf(int tree, BatchExamples examples, int example);
+	
+	/**
+	 * @param tree the number of a tree
+	 * @param leaf a leaf of the tree
+	 * @return the class id the leaf votes for
+	 */
+	abstract int getClassId(int tree, int leaf);
+	
+	/**
+	 * Add the class probabilities of a leaf to running sums
+	 * 
+	 * @param tree the number of a tree
+	 * @param leaf a leaf of the tree
+	 * @param sums the sums, indexed by class id from offset
+	 * @param offset where the sums start in sums
+	 */
+	abstract void addClassProbabilities(int tree, int leaf, double[] sums, int offset);
+	
+	/**
+	 * @return whether the vote for an example can stop before every tree has
+	 * voted (see canStopVoting).  By default every tree votes.
+	 */
+	boolean hasEarlyExit(){
+		return false;
+	}
+	
+	/**
+	 * Whether the vote for an example is settled, only asked if hasEarlyExit()
+	 * 
+	 * @param votes vote counts
+	 * @param offset where the counts for the example start
+	 * @param evaluated how many trees have voted so far
+	 * @return whether the rest of the trees can be skipped
+	 */
+	boolean canStopVoting(int[] votes, int offset, int evaluated){
+		return false;
+	}
+	
+	/**
+	 * Called after classifying with how many votes were counted, for statistics
+	 * 
+	 * @param numVotes the number of trees evaluated, summed over the examples
+	 * @param numExamples the number of examples classified
+	 */
+	void countVotes(long numVotes, int numExamples){
+	}
+	
+	/**
+	 * Take the vote for an example
+	 * 
+	 * @param example
+	 * @param votes room for the vote counts of every class, all 0
+	 * @return the class id with the most votes
+	 */
+	int classify(Example example, int[] votes){
+		int numTrees = getNumTrees();
+		boolean earlyExit = hasEarlyExit();
+		int evaluated = 0;
+		
+		while( evaluated < numTrees ){
+			votes[getClassId(evaluated, findLeaf(evaluated, example))]++;
+			evaluated++;
+			
+			if( earlyExit && canStopVoting(votes, 0, evaluated) ){
+				break;
+			}
+		}
+		
+		countVotes(evaluated, 1);
+		return DecisionTreeClassifier.argMax(votes, 0, getNumClasses());
+	}
+	
+	/**
+	 * The probability of the class that wins the vote, averaged over the trees
+	 * 
+	 * @param example
+	 * @param votes room for the vote counts of every class, all 0
+	 * @param probabilities room for the probability of every class, all 0.0
+	 * @return the confidence
+	 */
+	double confidence(Example example, int[] votes, double[] probabilities){
+		int numTrees = getNumTrees();
+		
+		for( int t = 0; t < numTrees; t++ ){
+			int leaf = findLeaf(t, example);
+			votes[getClassId(t, leaf)]++;
+			addClassProbabilities(t, leaf, probabilities, 0);
+		}
+		
+		return probabilities[DecisionTreeClassifier.argMax(votes, 0, getNumClasses())]/numTrees;
+	}
+	
+	/**
+	 * Average the class probabilities of the leaves an example falls into
+	 * 
+	 * @param example
+	 * @param probabilities filled in with the probabilities, indexed by class id
+	 */
+	void predictProba(Example example, double[] probabilities){
+		int numTrees = getNumTrees();
+		int numClasses = getNumClasses();
+		
+		if( probabilities.length < numClasses ){
+			throw new IllegalArgumentException("Need room for " + numClasses + " probabilities but got " + probabilities.length);
+		}
+		
+		Arrays.fill(probabilities, 0, numClasses, 0.0);
+		
+		for( int t = 0; t < numTrees; t++ ){
+			addClassProbabilities(t, findLeaf(t, example), probabilities, 0);
+		}
+		
+		for( int c = 0; c < numClasses; c++ ){
+			probabilities[c] /= numTrees;
+		}
+	}
+	
+	/**
+	 * Take the vote for all of the examples of a batch.  With early exit, each
+	 * tree only runs over the examples whose vote isn't settled yet.
+	 * 
+	 * @param examples
+	 * @return the class id with the most votes for each example
+	 */
+	int[] classifyBatch(BatchExamples examples){
+		int numExamples = examples.size();
+		int numClasses = getNumClasses();
+		int numTrees = getNumTrees();
+		boolean earlyExit = hasEarlyExit();
+		int[] votes = new int[numExamples*numClasses];
+		long numVotes = 0;
+		
+		// the examples that are still voting
+		int[] active = new int[numExamples];
+		int numActive = numExamples;
+		
+		for( int i = 0; i < numExamples; i++ ){
+			active[i] = i;
+		}
+		
+		for( int t = 0; t < numTrees && numActive > 0; t++ ){
+			for( int k = 0; k < numActive; k++ ){
+				int i = active[k];
+				votes[i*numClasses + getClassId(t, findLeaf(t, examples, i))]++;
+			}
+			
+			numVotes += numActive;
+			
+			if( earlyExit ){
+				int stillActive = 0;
+				
+				for( int k = 0; k < numActive; k++ ){
+					if( !canStopVoting(votes, active[k]*numClasses, t+1) ){
+						active[stillActive++] = active[k];
+					}
+				}
+				
+				numActive = stillActive;
+			}
+		}
+		
+		countVotes(numVotes, numExamples);
+		int[] classIds = new int[numExamples];
+		
+		for( int i = 0; i < numExamples; i++ ){
+			classIds[i] = DecisionTreeClassifier.argMax(votes, i*numClasses, numClasses);
+		}
+		
+		return classIds;
+	}
+	
+	/**
+	 * Get the confidence (see confidence) of all of the examples of a batch
+	 * 
+	 * @param examples
+	 * @return the confidence for each example
+	 */
+	double[] confidenceBatch(BatchExamples examples){
+		int numExamples = examples.size();
+		int numClasses = getNumClasses();
+		int numTrees = getNumTrees();
+		int[] votes = new int[numExamples*numClasses];
+		double[] probabilities = new double[numExamples*numClasses];
+		
+		for( int t = 0; t < numTrees; t++ ){
+			for( int i = 0; i < numExamples; i++ ){
+				int leaf = findLeaf(t, examples, i);
+				votes[i*numClasses + getClassId(t, leaf)]++;
+				addClassProbabilities(t, leaf, probabilities, i*numClasses);
+			}
+		}
+		
+		double[] confidences = new double[numExamples];
+		
+		for( int i = 0; i < numExamples; i++ ){
+			confidences[i] = probabilities[i*numClasses + DecisionTreeClassifier.argMax(votes, i*numClasses, numClasses)]/numTrees;
+		}
+		
+		return confidences;
+	}
+	
+	/**
+	 * Get the probability of each class (see predictProba) for all of the
+	 * examples of a batch
+	 * 
+	 * @param examples
+	 * @return the probabilities, [example*number of classes + class id]
+	 */
+	double[] predictProbaBatch(BatchExamples examples){
+		int numExamples = examples.size();
+		int numClasses = getNumClasses();
+		int numTrees = getNumTrees();
+		double[] probabilities = new double[numExamples*numClasses];
+		
+		for( int t = 0; t < numTrees; t++ ){
+			for( int i = 0; i < numExamples; i++ ){
+				addClassProbabilities(t, findLeaf(t, examples, i), probabilities, i*numClasses);
+			}
+		}
+		
+		for( int i = 0; i < probabilities.length; i++ ){
+			probabilities[i] /= numTrees;
+		}
+		
+		return probabilities;
+	}
+}
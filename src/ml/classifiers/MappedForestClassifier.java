@@ -0,0 +1,372 @@
+package ml.classifiers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+/**
+ * A tree or forest loaded from a model file written by DecisionTreeClassifier.save
+ * or EnsembleTreeClassifier.save.  The file is memory-mapped and examples are
+ * classified by walking the node records in the mapping, so opening a model
+ * doesn't build any trees.  Classifies the same way as the classifier that
+ * saved it.
+ * 
+ * The model is read-only: it's a Predictor rather than a Classifier since it
+ * can't be trained, and it's safe to share between threads.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class MappedForestClassifier implements Predictor {
+	private ByteBuffer model;
+	private double[] classLabels;
+	
+	// the byte offset of the first node and of the leaf class probabilities of each tree
+	private int[] treeStart;
+	private int[] probabilitiesStart;
+	
+	/**
+	 * Open a model file
+	 * 
+	 * @param filename
+	 * @throws IOException if the file isn't a model file or is corrupt
+	 */
+	public MappedForestClassifier(String filename) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			if( channel.size() > Integer.MAX_VALUE ){
+				throw new IOException(filename + " is too large to be a model file");
+			}
+			
+			model = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}finally{
+			channel.close();
+		}
+		
+		try{
+			if( model.getInt(0) != ForestModelFile.MAGIC ){
+				throw new IOException(filename + " is not a model file");
+			}
+			
+			int version = model.getInt(4);
+			
+			if( version != ForestModelFile.VERSION ){
+				throw new IOException(filename + " has unsupported version " + version);
+			}
+			
+			int kind = model.getInt(8);
+			int numClasses = model.getInt(12);
+			
+			// check the counts before allocating anything with them
+			if( numClasses < 1 || ForestModelFile.HEADER_SIZE + 8L*numClasses + 8 > model.limit() ){
+				throw new IOException(filename + " has a bad number of classes: " + numClasses);
+			}
+			
+			classLabels = new double[numClasses];
+			int position = ForestModelFile.HEADER_SIZE;
+			
+			for( int c = 0; c < classLabels.length; c++ ){
+				classLabels[c] = model.getDouble(position);
+				position += 8;
+			}
+			
+			int numTrees = model.getInt(position);
+			position += 8;
+			
+			if( numTrees < 1 || 8L*numTrees > model.limit() - position ){
+				throw new IOException(filename + " has a bad number of trees: " + numTrees);
+			}
+			
+			if( kind == ForestModelFile.TREE ? numTrees != 1 : kind != ForestModelFile.FOREST ){
+				throw new IOException(filename + " has an unknown kind of model");
+			}
+			
+			treeStart = new int[numTrees];
+			probabilitiesStart = new int[numTrees];
+			
+			for( int t = 0; t < numTrees; t++ ){
+				int numNodes = model.getInt(position);
+				int numLeaves = model.getInt(position + 4);
+				
+				if( numNodes < 1 || numLeaves < 1 ){
+					throw new IOException(filename + " has a tree with " + numNodes + " nodes and " + numLeaves + " leaves");
+				}
+				
+				long end = position + 8 + (long)ForestModelFile.NODE_SIZE*numNodes + 8L*numLeaves*numClasses;
+				
+				if( end > model.limit() ){
+					throw new IOException(filename + " is truncated");
+				}
+				
+				treeStart[t] = position + 8;
+				probabilitiesStart[t] = treeStart[t] + ForestModelFile.NODE_SIZE*numNodes;
+				checkTree(filename, treeStart[t], numNodes, numLeaves);
+				position = (int)end;
+			}
+			
+			if( position != model.limit() ){
+				throw new IOException(filename + " should be " + position + " bytes but is " + model.limit());
+			}
+		}catch(IndexOutOfBoundsException e){
+			throw new IOException(filename + " is truncated", e);
+		}
+	}
+	
+	/**
+	 * Check the node records of a tree, so that walking it can't loop or read
+	 * outside of the tree: every child has to come after its parent, and every
+	 * leaf has to have a class id and leaf number in range.
+	 * 
+	 * @param filename the model file, for the error message
+	 * @param start the byte offset of the tree's first node
+	 * @param numNodes
+	 * @param numLeaves
+	 * @throws IOException if the tree is corrupt
+	 */
+	private void checkTree(String filename, int start, int numNodes, int numLeaves) throws IOException{
+		for( int i = 0; i < numNodes; i++ ){
+			int node = start + ForestModelFile.NODE_SIZE*i;
+			int feature = model.getInt(node);
+			
+			if( feature == FlatDecisionTree.LEAF ){
+				int classId = model.getInt(node + 4);
+				int leaf = model.getInt(node + 8);
+				
+				if( classId < 0 || classId >= classLabels.length || leaf < 0 || leaf >= numLeaves ){
+					throw new IOException(filename + " has a corrupt leaf at node " + i);
+				}
+			}else{
+				int left = model.getInt(node + 4);
+				
+				if( feature < 0 || left <= i || left >= numNodes-1 ){
+					throw new IOException(filename + " has a corrupt split at node " + i);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Figure out which leaf an example falls into in a tree
+	 * 
+	 * @param start the byte offset of the tree's first node
+	 * @param example
+	 * @return the byte offset of the leaf
+	 */
+	private int findLeaf(int start, Example example){
+		int node = start;
+		int feature;
+		
+		while( (feature = model.getInt(node)) != FlatDecisionTree.LEAF ){
+			node = child(start, node, example.getFeature(feature));
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Figure out which leaf an example of a batch falls into in a tree
+	 * 
+	 * @param start the byte offset of the tree's first node
+	 * @param examples the batch
+	 * @param example the index of the example in the batch
+	 * @return the byte offset of the leaf
+	 */
+	private int findLeaf(int start, BatchExamples examples, int example){
+		int node = start;
+		int feature;
+		
+		while( (feature = model.getInt(node)) != FlatDecisionTree.LEAF ){
+			node = child(start, node, examples.getFeature(example, feature));
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * @param start the byte offset of the tree's first node
+	 * @param node the byte offset of an internal node
+	 * @param featureValue the value of the feature the node splits on
+	 * @return the byte offset of the child the value goes down to
+	 */
+	private int child(int start, int node, double featureValue){
+		double t = model.getDouble(node + 8);
+		
+		// NaN != NaN, which marks the zero vs. non-zero splits (see FlatDecisionTree)
+		boolean goesLeft = t == t ? featureValue <= t : featureValue == DecisionTreeNode.LEFT_BRANCH;
+		return start + ForestModelFile.NODE_SIZE*(model.getInt(node + 4) + (goesLeft ? 0 : 1));
+	}
+	
+	/**
+	 * @param leaf the byte offset of a leaf
+	 * @return the class id at the leaf
+	 */
+	private int getClassId(int leaf){
+		return model.getInt(leaf + 4);
+	}
+	
+	/**
+	 * @param tree the number of a tree
+	 * @param leaf the byte offset of a leaf of the tree
+	 * @return the byte offset of the leaf's class probabilities
+	 */
+	private int getClassProbabilities(int tree, int leaf){
+		return probabilitiesStart[tree] + 8*classLabels.length*model.getInt(leaf + 8);
+	}
+	
+	/**
+	 * Add the class probabilities of a leaf to running sums
+	 * 
+	 * @param tree the number of a tree
+	 * @param leaf the byte offset of a leaf of the tree
+	 * @param sums the sums, indexed by class id from offset
+	 * @param offset where the sums start in sums
+	 */
+	private void addClassProbabilities(int tree, int leaf, double[] sums, int offset){
+		int position = getClassProbabilities(tree, leaf);
+		
+		for( int c = 0; c < classLabels.length; c++, position += 8 ){
+			sums[offset + c] += model.getDouble(position);
+		}
+	}
+	
+	/**
+	 * The trees of the file as ForestVote sees them.  A tree is a forest of
+	 * one, whose vote is its leaf's class and whose confidence is its leaf's.
+	 */
+	private final ForestVote vote = new ForestVote(){
+		int getNumTrees(){
+			return treeStart.length;
+		}
+		
+		int getNumClasses(){
+			return classLabels.length;
+		}
+		
+		int findLeaf(int tree, Example example){
+			return MappedForestClassifier.this.findLeaf(treeStart[tree], example);
+		}
+		
+		int findLeaf(int tree, BatchExamples examples, int example){
+			return MappedForestClassifier.this.findLeaf(treeStart[tree], examples, example);
+		}
+		
+		int getClassId(int tree, int leaf){
+			return MappedForestClassifier.this.getClassId(leaf);
+		}
+		
+		void addClassProbabilities(int tree, int leaf, double[] sums, int offset){
+			MappedForestClassifier.this.addClassProbabilities(tree, leaf, sums, offset);
+		}
+	};
+	
+	/**
+	 * Classifies an example with the tree, or by majority vote of the trees of
+	 * a forest.
+	 * 
+	 * @param example
+	 */
+	public double classify(Example example){
+		return classLabels[vote.classify(example, new int[classLabels.length])];
+	}
+	
+	/**
+	 * The confidence of the leaf for a tree.  For a forest, the average
+	 * probability the trees give the class that wins the vote (like
+	 * EnsembleTreeClassifier).
+	 * 
+	 * @param example
+	 */
+	public double confidence(Example example){
+		return vote.confidence(example, new int[classLabels.length], new double[classLabels.length]);
+	}
+	
+	/**
+	 * Get the probability of each class for an example: the class probabilities
+	 * of its leaf for a tree, or their average over the trees of a forest.
+	 * 
+	 * @param example
+	 * @param probabilities filled in with the probabilities, indexed by class id
+	 * (see getClassLabels), so it can be reused from example to example
+	 */
+	public void predictProba(Example example, double[] probabilities){
+		vote.predictProba(example, probabilities);
+	}
+	
+	/**
+	 * @param example
+	 * @return the probability of each class for the example, indexed by class
+	 * id (see predictProba(Example, double[]))
+	 */
+	public double[] predictProba(Example example){
+		double[] probabilities = new double[classLabels.length];
+		predictProba(example, probabilities);
+		return probabilities;
+	}
+	
+	/**
+	 * Get the probability of each class for all of the examples in a data set,
+	 * one tree at a time
+	 * 
+	 * @param data
+	 * @return the probabilities, [example*number of classes + class id]
+	 */
+	public double[] predictProbaBatch(DataSet data){
+		return vote.predictProbaBatch(new BatchExamples(data));
+	}
+	
+	/**
+	 * Classifies all of the examples in a data set, one tree at a time (see
+	 * ForestVote).
+	 * 
+	 * @param data
+	 */
+	public double[] classifyBatch(DataSet data){
+		return classifyBatch(new BatchExamples(data));
+	}
+	
+	/**
+	 * Classifies some of the examples in a data set, by index, like
+	 * classifyBatch(DataSet)
+	 * 
+	 * @param data
+	 * @param rows the indices of the examples to classify
+	 */
+	public double[] classifyBatch(DataSet data, int[] rows){
+		return classifyBatch(new BatchExamples(data, rows));
+	}
+	
+	private double[] classifyBatch(BatchExamples examples){
+		int[] classIds = vote.classifyBatch(examples);
+		double[] predictions = new double[classIds.length];
+		
+		for( int i = 0; i < classIds.length; i++ ){
+			predictions[i] = classLabels[classIds[i]];
+		}
+		
+		return predictions;
+	}
+	
+	public double[] confidenceBatch(DataSet data){
+		return vote.confidenceBatch(new BatchExamples(data));
+	}
+	
+	/**
+	 * @return the number of trees in the model
+	 */
+	public int getNumTrees(){
+		return treeStart.length;
+	}
+	
+	/**
+	 * @return the training labels, in class id order
+	 */
+	public double[] getClassLabels(){
+		return classLabels.clone();
+	}
+}
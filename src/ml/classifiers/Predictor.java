@@ -0,0 +1,66 @@
+package ml.classifiers;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+/**
+ * The read-only side of a trained model: scoring examples, without training.
+ * Implemented by the tree classifiers, which are also Classifiers, and by
+ * MappedForestClassifier, which can only be loaded from a saved model.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public interface Predictor {
+	/**
+	 * Classify the example
+	 * 
+	 * @param example
+	 * @return the predicted class label for this example
+	 */
+	public double classify(Example example);
+	
+	/**
+	 * @param example
+	 * @return the probability the model gives the class it predicts for this example
+	 */
+	public double confidence(Example example);
+	
+	/**
+	 * Classify all of the examples in the data set
+	 * 
+	 * @param data
+	 * @return the predicted class label for each example, in example order
+	 */
+	public double[] classifyBatch(DataSet data);
+	
+	/**
+	 * Classify some of the examples in the data set, picked by index, without
+	 * copying them out of it
+	 * 
+	 * @param data
+	 * @param rows the indices of the examples to classify
+	 * @return the predicted class label for each of the rows, in the same order
+	 */
+	public double[] classifyBatch(DataSet data, int[] rows);
+	
+	/**
+	 * Get the confidence for all of the examples in the data set
+	 * 
+	 * @param data
+	 * @return the confidence for each example, in example order
+	 */
+	public double[] confidenceBatch(DataSet data);
+	
+	/**
+	 * Get the probability of each class for an example
+	 * 
+	 * @param example
+	 * @return the probabilities, indexed by class id (see getClassLabels)
+	 */
+	public double[] predictProba(Example example);
+	
+	/**
+	 * @return the training labels, in class id order
+	 */
+	public double[] getClassLabels();
+}
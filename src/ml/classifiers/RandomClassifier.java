@@ -1,5 +1,6 @@
 package ml.classifiers;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import ml.data.DataSet;
@@ -28,4 +29,33 @@ public class RandomClassifier implements Classifier{
 	public double confidence(Example example) {
 		return 1.0; // super confident!
 	}
+	
+	@Override
+	public double[] classifyBatch(DataSet data) {
+		double[] predictions = new double[data.size()];
+		
+		for( int i = 0; i < predictions.length; i++ ){
+			predictions[i] = rand.nextInt(2) == 1? 1.0 : -1.0;
+		}
+		
+		return predictions;
+	}
+	
+	@Override
+	public double[] classifyBatch(DataSet data, int[] rows) {
+		double[] predictions = new double[rows.length];
+		
+		for( int i = 0; i < predictions.length; i++ ){
+			predictions[i] = rand.nextInt(2) == 1? 1.0 : -1.0;
+		}
+		
+		return predictions;
+	}
+	
+	@Override
+	public double[] confidenceBatch(DataSet data) {
+		double[] confidences = new double[data.size()];
+		Arrays.fill(confidences, 1.0);
+		return confidences;
+	}
 }
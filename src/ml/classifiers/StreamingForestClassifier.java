@@ -0,0 +1,755 @@
+package ml.classifiers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import ml.data.DataSet;
+import ml.data.DataSetStream;
+import ml.data.Example;
+import ml.data.FeatureBins;
+import ml.data.SparseFeatures;
+
+/**
+ * A forest of bagged histogram-split trees trained out of core, for data sets
+ * that don't fit in memory.  The training data is streamed (see DataSetStream)
+ * instead of loaded, so memory grows with the number of features, bins and open
+ * nodes rather than with the number of examples.
+ * 
+ * Training first reads the data once to find the labels and to cut the feature
+ * bins from a random sample of the examples.  The trees are then grown level
+ * by level, all at the same time: each pass over the data routes every example
+ * down every tree to the node it's in and adds it to that node's label
+ * histogram over the bins of its candidate features, and at the end of the
+ * pass each open node is split at the best bin boundary (as with
+ * DecisionTreeClassifier.setHistogramSplits) or becomes a leaf.  If the
+ * histograms of a level don't fit in setMaxHistogramBytes, the level takes
+ * more than one pass.
+ * 
+ * The bootstrap weight of example i in a tree is a Poisson(1) draw computed from
+ * the tree's seed and i, so the samples are never stored and come out the same
+ * on every pass.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class StreamingForestClassifier implements Classifier, Predictor {
+	// cumulative probabilities of a Poisson(1) draw being at most 0, 1, 2, ...
+	private static final double[] POISSON_CDF = poissonCdf();
+	
+	private int numTrees = 20;
+	private int depthLimit = 5;
+	private boolean featureBagging = false;
+	private boolean bootstrap = true;
+	private int splitCriterion = DecisionTreeClassifier.ERROR;
+	private int mtry = 0;
+	private int maxBins = FeatureBins.MAX_BINS;
+	private int sampleSize = 10000;
+	private long maxHistogramBytes = 256L << 20;
+	
+	private final ForestSeed seed = new ForestSeed();
+	
+	// the trained trees and the labels seen in training, sorted
+	private ArrayList<FlatDecisionTree> trees;
+	private double[] classLabels;
+	private int numPasses;
+	
+	// training state
+	private int numClasses;
+	private FeatureBins bins;
+	private int[] usableFeatures; // the features with more than one bin
+	
+	/**
+	 * Train on a data set that's already in memory, which is streamed just
+	 * like a file would be.
+	 * 
+	 * @param data
+	 */
+	public void train(DataSet data){
+		try{
+			train(new DataSetStream(data));
+		}catch(IOException e){
+			// scanning a data set in memory doesn't read anything
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Train on a data set file without loading it
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType DataSet.CSVFILE, DataSet.TEXTFILE or DataSet.BINARYFILE
+	 * @throws IOException
+	 */
+	public void train(String filename, int fileType) throws IOException{
+		train(new DataSetStream(filename, fileType));
+	}
+	
+	/**
+	 * Train on the examples of a stream, which is scanned once to sample the
+	 * data and then once per tree level (more if the histograms of a level
+	 * don't fit in memory)
+	 * 
+	 * @param stream
+	 * @throws IOException
+	 */
+	public void train(DataSetStream stream) throws IOException{
+		// the sample's seed, then each tree's
+		Random seeds = seed.start(false);
+		numPasses = 0;
+		sample(stream, new Random(seeds.nextLong()));
+		
+		Node[] roots = new Node[numTrees];
+		ArrayList<Node> open = new ArrayList<Node>();
+		
+		for( int t = 0; t < numTrees; t++ ){
+			TreeState tree = new TreeState(seeds.nextLong(), usableFeatures);
+			roots[t] = newNode(tree, 0);
+			open.add(roots[t]);
+		}
+		
+		while( !open.isEmpty() ){
+			ArrayList<Node> next = new ArrayList<Node>();
+			int first = 0;
+			
+			while( first < open.size() ){
+				// as many of the open nodes as fit in the memory for histograms
+				int last = first;
+				long histogramSize = 0;
+				
+				while( last < open.size() && (last == first ||
+					4L*(histogramSize + open.get(last).histogramSize) <= maxHistogramBytes) ){
+					histogramSize += open.get(last).histogramSize;
+					last++;
+				}
+				
+				Batch batch = new Batch(open.subList(first, last), histogramSize);
+				countHistograms(stream, roots, batch);
+				
+				for( Node node: batch.nodes ){
+					split(node, batch.histogram, next);
+					node.offsets = null;
+				}
+				
+				first = last;
+			}
+			
+			open = next;
+		}
+		
+		trees = new ArrayList<FlatDecisionTree>();
+		
+		for( Node root: roots ){
+			trees.add(new FlatDecisionTree(root.toTreeNode(classLabels), classLabels));
+		}
+		
+		bins = null;
+		usableFeatures = null;
+	}
+	
+	/**
+	 * Read the data once to find the labels and the number of features, and
+	 * cut the feature bins from a reservoir sample of the examples
+	 * 
+	 * @param stream
+	 * @param rand
+	 * @throws IOException
+	 */
+	private void sample(DataSetStream stream, final Random rand) throws IOException{
+		final ArrayList<Example> sample = new ArrayList<Example>();
+		final TreeSet<Double> labels = new TreeSet<Double>();
+		final int[] maxFeature = {-1};
+		
+		stream.scan(new DataSetStream.Visitor() {
+			public void visit(DataSetStream.Row row) {
+				labels.add(row.getLabel());
+				
+				for( int i = 0; i < row.getNumNonZeros(); i++ ){
+					maxFeature[0] = Math.max(maxFeature[0], row.getNonZeroFeature(i));
+				}
+				
+				if( sample.size() < sampleSize ){
+					sample.add(row.toExample());
+				}else{
+					int j = rand.nextInt(row.getIndex()+1);
+					
+					if( j < sampleSize ){
+						sample.set(j, row.toExample());
+					}
+				}
+			}
+		});
+		numPasses++;
+		
+		if( labels.isEmpty() ){
+			throw new IllegalArgumentException("Can't train on an empty data set");
+		}
+		
+		classLabels = new double[labels.size()];
+		int c = 0;
+		
+		for( double label: labels ){
+			classLabels[c++] = label;
+		}
+		
+		numClasses = classLabels.length;
+		int numFeatures = Math.max(stream.getNumFeatures(), maxFeature[0]+1);
+		bins = new FeatureBins(new SparseFeatures(sample, numFeatures), maxBins);
+		
+		// features that are constant in the sample can't be split on
+		int numUsable = 0;
+		usableFeatures = new int[numFeatures];
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			if( bins.getNumBins(f) > 1 ){
+				usableFeatures[numUsable++] = f;
+			}
+		}
+		
+		usableFeatures = Arrays.copyOf(usableFeatures, numUsable);
+	}
+	
+	/**
+	 * Create an open node and choose the features it can split on: with feature
+	 * bagging mtry of them drawn at random, without replacement, otherwise all of
+	 * them (see DecisionTreeClassifier.setMtry)
+	 * 
+	 * @param tree the tree the node is in
+	 * @param depth the depth of the node
+	 * @return the node
+	 */
+	private Node newNode(TreeState tree, int depth){
+		int[] featureOrder = tree.featureOrder;
+		int[] candidates;
+		
+		if( !featureBagging ){
+			candidates = featureOrder;
+		}else{
+			int numCandidates = Math.min(featureOrder.length, mtry > 0 ? mtry :
+				(int)Math.max(1, Math.round(Math.sqrt(featureOrder.length))));
+			candidates = new int[numCandidates];
+			
+			// partial Fisher-Yates
+			for( int i = 0; i < numCandidates; i++ ){
+				int j = i + tree.rand.nextInt(featureOrder.length-i);
+				int temp = featureOrder[i];
+				featureOrder[i] = featureOrder[j];
+				featureOrder[j] = temp;
+				candidates[i] = featureOrder[i];
+			}
+		}
+		
+		Node node = new Node(tree, depth, candidates);
+		
+		// room for the node's label counts, even without candidates
+		node.histogramSize = numClasses;
+		
+		for( int f: candidates ){
+			node.histogramSize += bins.getNumBins(f)*numClasses;
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Stream the data once and count the labels of the examples that reach each
+	 * node of the batch, over the bins of each of its candidate features
+	 * 
+	 * @param stream
+	 * @param roots the roots of the trees
+	 * @param batch the nodes to count for
+	 * @throws IOException
+	 */
+	private void countHistograms(DataSetStream stream, final Node[] roots, final Batch batch) throws IOException{
+		// lay out the histograms of the batch: the node's label counts, then one
+		// [bin*numClasses + class id] histogram per candidate
+		int offset = 0;
+		
+		for( Node node: batch.nodes ){
+			node.offsets = new int[node.candidates.length+1];
+			node.offsets[0] = offset;
+			offset += numClasses;
+			
+			for( int k = 0; k < node.candidates.length; k++ ){
+				node.offsets[k+1] = offset;
+				offset += bins.getNumBins(node.candidates[k])*numClasses;
+			}
+		}
+		
+		final int[] histogram = batch.histogram;
+		
+		stream.scan(new DataSetStream.Visitor() {
+			public void visit(DataSetStream.Row row) {
+				int classId = Arrays.binarySearch(classLabels, row.getLabel());
+				
+				for( Node root: roots ){
+					Node node = root;
+					
+					while( node.left != null ){
+						node = row.getFeature(node.featureIndex) <= node.threshold ? node.left : node.right;
+					}
+					
+					// the node isn't in this batch, or is a leaf already
+					if( node.offsets == null ){
+						continue;
+					}
+					
+					int weight = bootstrap ? poissonWeight(node.tree.seed, row.getIndex()) : 1;
+					
+					if( weight == 0 ){
+						continue;
+					}
+					
+					int[] offsets = node.offsets;
+					int[] candidates = node.candidates;
+					histogram[offsets[0] + classId] += weight;
+					
+					for( int k = 0; k < candidates.length; k++ ){
+						int f = candidates[k];
+						histogram[offsets[k+1] + bins.getBin(f, row.getFeature(f))*numClasses + classId] += weight;
+					}
+				}
+			}
+		});
+		numPasses++;
+	}
+	
+	/**
+	 * Split an open node at the best bin boundary of its candidates, or make it
+	 * a leaf if it's pure, at the depth limit or can't be split
+	 * 
+	 * @param node the node, with its histograms counted
+	 * @param histogram
+	 * @param next the nodes to split on the next level
+	 */
+	private void split(Node node, int[] histogram, ArrayList<Node> next){
+		int[] nodeCounts = Arrays.copyOfRange(histogram, node.offsets[0], node.offsets[0]+numClasses);
+		int nodeTotal = 0;
+		
+		for( int c = 0; c < numClasses; c++ ){
+			nodeTotal += nodeCounts[c];
+		}
+		
+		if( node.depth >= depthLimit || nodeTotal == 0 ||
+			nodeCounts[DecisionTreeClassifier.argMax(nodeCounts, 0, numClasses)] == nodeTotal ){
+			node.classCounts = nodeCounts;
+			return;
+		}
+		
+		DecisionTreeClassifier.BinSplit best = new DecisionTreeClassifier.BinSplit(numClasses);
+		
+		for( int k = 0; k < node.candidates.length; k++ ){
+			int f = node.candidates[k];
+			DecisionTreeClassifier.sweepBins(histogram, node.offsets[k+1], bins.getNumBins(f), nodeCounts, nodeTotal,
+				numClasses, splitCriterion, f, best);
+		}
+		
+		if( best.featureIndex == -1 ){
+			node.classCounts = nodeCounts;
+			return;
+		}
+		
+		node.featureIndex = best.featureIndex;
+		node.threshold = bins.getThreshold(best.featureIndex, best.lastLeftBin);
+		node.left = child(node, Arrays.copyOfRange(best.branchCounts, 0, numClasses), next);
+		node.right = child(node, Arrays.copyOfRange(best.branchCounts, numClasses, 2*numClasses), next);
+	}
+	
+	/**
+	 * Create a child of a node that was just split.  Children that are pure or
+	 * at the depth limit become leaves right away, since their label counts are
+	 * already known from the split, and the others are opened for the next level.
+	 * 
+	 * @param parent
+	 * @param counts the label counts of the child
+	 * @param next the nodes to split on the next level
+	 * @return the child
+	 */
+	private Node child(Node parent, int[] counts, ArrayList<Node> next){
+		int total = 0;
+		
+		for( int c = 0; c < numClasses; c++ ){
+			total += counts[c];
+		}
+		
+		if( parent.depth+1 >= depthLimit || counts[DecisionTreeClassifier.argMax(counts, 0, numClasses)] == total ){
+			Node leaf = new Node(parent.tree, parent.depth+1, null);
+			leaf.classCounts = counts;
+			return leaf;
+		}
+		
+		Node child = newNode(parent.tree, parent.depth+1);
+		next.add(child);
+		return child;
+	}
+	
+	/**
+	 * Get the bootstrap weight of an example in a tree: a Poisson(1) draw, the
+	 * limit of how many times the example would be picked by sampling the data
+	 * with replacement, hashed from the tree's seed and the example's index
+	 * 
+	 * @param treeSeed
+	 * @param index the index of the example
+	 * @return the weight
+	 */
+	static int poissonWeight(long treeSeed, int index){
+		// SplitMix64's finalizer
+		long z = treeSeed + (index+1)*0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		double u = (z >>> 11)*0x1.0p-53;
+		
+		int weight = 0;
+		
+		while( weight < POISSON_CDF.length-1 && u >= POISSON_CDF[weight] ){
+			weight++;
+		}
+		
+		return weight;
+	}
+	
+	/**
+	 * @return the cumulative probabilities of a Poisson(1) draw, up to where
+	 * they reach 1.0
+	 */
+	private static double[] poissonCdf(){
+		ArrayList<Double> cdf = new ArrayList<Double>();
+		double p = Math.exp(-1);
+		double sum = p;
+		
+		for( int k = 1; sum < 1.0 && k < 32; k++ ){
+			cdf.add(sum);
+			p /= k;
+			sum += p;
+		}
+		
+		double[] cumulative = new double[cdf.size()+1];
+		
+		for( int k = 0; k < cdf.size(); k++ ){
+			cumulative[k] = cdf.get(k);
+		}
+		
+		cumulative[cdf.size()] = 1.0;
+		return cumulative;
+	}
+	
+	/**
+	 * The trees as ForestVote sees them
+	 */
+	private final ForestVote vote = new ForestVote(){
+		int getNumTrees(){
+			return trees.size();
+		}
+		
+		int getNumClasses(){
+			return classLabels.length;
+		}
+		
+		int findLeaf(int tree, Example example){
+			return trees.get(tree).findLeaf(example);
+		}
+		
+		int findLeaf(int tree, BatchExamples examples, int example){
+			return examples.findLeaf(trees.get(tree), example);
+		}
+		
+		int getClassId(int tree, int leaf){
+			return trees.get(tree).getClassId(leaf);
+		}
+		
+		void addClassProbabilities(int tree, int leaf, double[] sums, int offset){
+			trees.get(tree).addClassProbabilities(leaf, sums, offset);
+		}
+	};
+	
+	/**
+	 * Classifies an example by majority vote of the trees
+	 * 
+	 * @param example
+	 */
+	public double classify(Example example){
+		return classLabels[vote.classify(example, new int[classLabels.length])];
+	}
+	
+	/**
+	 * Gets the confidence of classify's prediction: the probability of the
+	 * winning class averaged over the trees (see predictProba)
+	 * 
+	 * @param example
+	 */
+	public double confidence(Example example){
+		return vote.confidence(example, new int[classLabels.length], new double[classLabels.length]);
+	}
+	
+	/**
+	 * Gets the probability of each class for an example by averaging the class
+	 * probabilities of the leaves it falls into
+	 * 
+	 * @param example
+	 * @return the probabilities, indexed by class id (see getClassLabels)
+	 */
+	public double[] predictProba(Example example){
+		double[] probabilities = new double[classLabels.length];
+		vote.predictProba(example, probabilities);
+		return probabilities;
+	}
+	
+	/**
+	 * Classifies all of the examples in a data set, one tree at a time
+	 * 
+	 * @param data
+	 */
+	public double[] classifyBatch(DataSet data){
+		return classifyBatch(new BatchExamples(data));
+	}
+	
+	/**
+	 * Classifies some of the examples in a data set, by index, like
+	 * classifyBatch(DataSet)
+	 * 
+	 * @param data
+	 * @param rows the indices of the examples to classify
+	 */
+	public double[] classifyBatch(DataSet data, int[] rows){
+		return classifyBatch(new BatchExamples(data, rows));
+	}
+	
+	private double[] classifyBatch(BatchExamples examples){
+		int[] classIds = vote.classifyBatch(examples);
+		double[] predictions = new double[classIds.length];
+		
+		for( int i = 0; i < classIds.length; i++ ){
+			predictions[i] = classLabels[classIds[i]];
+		}
+		
+		return predictions;
+	}
+	
+	/**
+	 * Gets the confidence (see confidence) of all of the examples in a data set,
+	 * one tree at a time
+	 * 
+	 * @param data
+	 */
+	public double[] confidenceBatch(DataSet data){
+		return vote.confidenceBatch(new BatchExamples(data));
+	}
+	
+	/**
+	 * Save the trained forest to a binary model file, which can be opened with
+	 * MappedForestClassifier.
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void save(String filename) throws IOException{
+		ForestModelFile.write(filename, ForestModelFile.FOREST, classLabels, trees);
+	}
+	
+	/**
+	 * @return the training labels, in class id order
+	 */
+	public double[] getClassLabels(){
+		return classLabels.clone();
+	}
+	
+	/**
+	 * @return how many times the last training run read the data
+	 */
+	public int getNumPasses(){
+		return numPasses;
+	}
+	
+	public void setNumTrees(int numTrees){
+		this.numTrees = numTrees;
+	}
+	
+	public void setDepthLimit(int depthLimit){
+		this.depthLimit = depthLimit;
+	}
+	
+	public void setFeatureBagging(boolean featureBagging){
+		this.featureBagging = featureBagging;
+	}
+	
+	/**
+	 * Weight the examples of each tree with a bootstrap sample (the default), or
+	 * train every tree on all of the examples
+	 * 
+	 * @param bootstrap
+	 */
+	public void setBootstrap(boolean bootstrap){
+		this.bootstrap = bootstrap;
+	}
+	
+	/**
+	 * Set how many features feature bagging draws at each node (see
+	 * DecisionTreeClassifier.setMtry)
+	 * 
+	 * @param mtry the number of features, or 0 for the square root of the number of features
+	 */
+	public void setMtry(int mtry){
+		if( mtry < 0 ){
+			throw new IllegalArgumentException("mtry can't be negative: " + mtry);
+		}
+		
+		this.mtry = mtry;
+	}
+	
+	/**
+	 * Set how the trees score splits (see DecisionTreeClassifier.setSplitCriterion)
+	 * 
+	 * @param splitCriterion
+	 */
+	public void setSplitCriterion(int splitCriterion){
+		if( splitCriterion < DecisionTreeClassifier.ERROR || splitCriterion > DecisionTreeClassifier.ENTROPY ){
+			throw new IllegalArgumentException("Unknown split criterion: " + splitCriterion);
+		}
+		
+		this.splitCriterion = splitCriterion;
+	}
+	
+	/**
+	 * @param maxBins the maximum number of bins per feature (at most FeatureBins.MAX_BINS)
+	 */
+	public void setMaxBins(int maxBins){
+		if( maxBins < 1 || maxBins > FeatureBins.MAX_BINS ){
+			throw new IllegalArgumentException("Number of bins must be between 1 and " + FeatureBins.MAX_BINS + ": " + maxBins);
+		}
+		
+		this.maxBins = maxBins;
+	}
+	
+	/**
+	 * Set how many examples the bins are cut from (10,000 by default)
+	 * 
+	 * @param sampleSize
+	 */
+	public void setSampleSize(int sampleSize){
+		if( sampleSize < 1 ){
+			throw new IllegalArgumentException("Sample size must be at least 1: " + sampleSize);
+		}
+		
+		this.sampleSize = sampleSize;
+	}
+	
+	/**
+	 * Set how much memory the histograms of one pass can take (256MB by default).
+	 * A level whose open nodes need more is counted over several passes.
+	 * 
+	 * @param maxHistogramBytes
+	 */
+	public void setMaxHistogramBytes(long maxHistogramBytes){
+		if( maxHistogramBytes < 1 ){
+			throw new IllegalArgumentException("Histogram memory must be positive: " + maxHistogramBytes);
+		}
+		
+		this.maxHistogramBytes = maxHistogramBytes;
+	}
+	
+	/**
+	 * @param seed the seed to train from, which makes the sample and the trees
+	 * reproducible
+	 */
+	public void setSeed(long seed){
+		this.seed.set(seed);
+	}
+	
+	/**
+	 * @return the seed the last training run drew the sample and the trees from
+	 * (see ForestSeed), picked at random unless setSeed was called
+	 */
+	public long getSeed(){
+		return seed.get();
+	}
+	
+	/**
+	 * What a tree's nodes share while it's being grown
+	 */
+	private static class TreeState {
+		private long seed; // also the seed of the tree's bootstrap weights
+		private SplittableRandom rand;
+		private int[] featureOrder;
+		
+		private TreeState(long seed, int[] usableFeatures){
+			this.seed = seed;
+			this.rand = new SplittableRandom(seed);
+			this.featureOrder = usableFeatures.clone();
+		}
+	}
+	
+	/**
+	 * A node of a tree being grown.  It's open until its histograms are counted,
+	 * then either split (left and right are set) or a leaf (classCounts is set).
+	 */
+	private static class Node {
+		private TreeState tree;
+		private int depth;
+		private int[] candidates;
+		private long histogramSize; // in ints
+		private int[] offsets; // where its histograms start, while it's being counted
+		
+		private int featureIndex;
+		private double threshold;
+		private Node left;
+		private Node right;
+		private int[] classCounts;
+		
+		private Node(TreeState tree, int depth, int[] candidates){
+			this.tree = tree;
+			this.depth = depth;
+			this.candidates = candidates;
+		}
+		
+		/**
+		 * @param classLabels
+		 * @return the subtree rooted at this node
+		 */
+		private DecisionTreeNode toTreeNode(double[] classLabels){
+			if( left == null ){
+				int numClasses = classLabels.length;
+				int total = 0;
+				
+				for( int c = 0; c < numClasses; c++ ){
+					total += classCounts[c];
+				}
+				
+				double[] classProbabilities = new double[numClasses];
+				
+				for( int c = 0; c < numClasses && total > 0; c++ ){
+					classProbabilities[c] = classCounts[c]/(double)total;
+				}
+				
+				int majority = DecisionTreeClassifier.argMax(classCounts, 0, numClasses);
+				return new DecisionTreeNode(classLabels[majority], total == 0 ? 0.0 : classCounts[majority]/(double)total,
+						classProbabilities);
+			}
+			
+			DecisionTreeNode node = new DecisionTreeNode(featureIndex, threshold);
+			node.setLeft(left.toTreeNode(classLabels));
+			node.setRight(right.toTreeNode(classLabels));
+			return node;
+		}
+	}
+	
+	/**
+	 * The open nodes counted in one pass, and their histograms
+	 */
+	private static class Batch {
+		private List<Node> nodes;
+		private int[] histogram;
+		
+		private Batch(List<Node> nodes, long histogramSize){
+			if( histogramSize > Integer.MAX_VALUE ){
+				throw new IllegalArgumentException("The histograms of one node don't fit in an array: " + histogramSize);
+			}
+			
+			this.nodes = nodes;
+			this.histogram = new int[(int)histogramSize];
+		}
+	}
+}
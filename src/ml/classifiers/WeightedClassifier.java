@@ -0,0 +1,22 @@
+package ml.classifiers;
+
+import ml.data.DataSet;
+
+/**
+ * A classifier that can train on a weighted version of a data set, so that it
+ * can train on part of a data set (e.g. a bootstrap sample or the training
+ * folds of a cross-validation) without the data being copied.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ * 
+ */
+public interface WeightedClassifier extends Classifier {
+	/**
+	 * Train this classifier based on the data set, counting example i weights[i]
+	 * times.  Examples with weight 0 are left out.
+	 * 
+	 * @param data
+	 * @param weights the weight of each example, or null to weight all examples 1
+	 */
+	public void train(DataSet data, int[] weights);
+}
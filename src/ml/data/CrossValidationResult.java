@@ -0,0 +1,100 @@
+package ml.data;
+
+import java.util.List;
+
+/**
+ * The results of a cross-validation run (see CrossValidator.run)
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class CrossValidationResult {
+	private double[] foldAccuracies;
+	private double[] predictions;
+	private double accuracy;
+	
+	/**
+	 * @param folds the example indices of each fold
+	 * @param foldPredictions the predictions for each fold, in fold order
+	 * @param labels the label of each example
+	 */
+	CrossValidationResult(int[][] folds, List<double[]> foldPredictions, double[] labels){
+		foldAccuracies = new double[folds.length];
+		predictions = new double[labels.length];
+		int correct = 0;
+		
+		for( int fold = 0; fold < folds.length; fold++ ){
+			int[] rows = folds[fold];
+			double[] foldPrediction = foldPredictions.get(fold);
+			int foldCorrect = 0;
+			
+			for( int i = 0; i < rows.length; i++ ){
+				predictions[rows[i]] = foldPrediction[i];
+				
+				if( foldPrediction[i] == labels[rows[i]] ){
+					foldCorrect++;
+				}
+			}
+			
+			foldAccuracies[fold] = foldCorrect/(double)rows.length;
+			correct += foldCorrect;
+		}
+		
+		accuracy = correct/(double)labels.length;
+	}
+	
+	/**
+	 * @return the accuracy on each fold
+	 */
+	public double[] getFoldAccuracies(){
+		return foldAccuracies;
+	}
+	
+	/**
+	 * @return the accuracy over all of the examples
+	 */
+	public double getAccuracy(){
+		return accuracy;
+	}
+	
+	/**
+	 * @return the average of the fold accuracies
+	 */
+	public double getMeanAccuracy(){
+		double sum = 0;
+		
+		for( double foldAccuracy: foldAccuracies ){
+			sum += foldAccuracy;
+		}
+		
+		return sum/foldAccuracies.length;
+	}
+	
+	/**
+	 * @return the (sample) standard deviation of the fold accuracies
+	 */
+	public double getAccuracyStdDev(){
+		double mean = getMeanAccuracy();
+		double sum = 0;
+		
+		for( double foldAccuracy: foldAccuracies ){
+			sum += (foldAccuracy-mean)*(foldAccuracy-mean);
+		}
+		
+		return foldAccuracies.length < 2 ? 0.0 : Math.sqrt(sum/(foldAccuracies.length-1));
+	}
+	
+	/**
+	 * Get the prediction for each example, made by the classifier that was
+	 * tested on its fold
+	 * 
+	 * @return the predictions, in example order
+	 */
+	public double[] getPredictions(){
+		return predictions;
+	}
+	
+	public String toString(){
+		return String.format("accuracy %.4f (fold mean %.4f, std dev %.4f over %d folds)",
+				accuracy, getMeanAccuracy(), getAccuracyStdDev(), foldAccuracies.length);
+	}
+}
@@ -1,7 +1,6 @@
 package ml.data;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Random;
 
 /**
@@ -15,6 +14,10 @@ public class CrossValidationSet {
 	private int numSplits;
 	private boolean randomize = false;
 	
+	// the order of the examples for a random cross-validation, shuffled once so
+	// that the splits don't overlap
+	private int[] order;
+	
 	/**
 	 * Generate a cross-validation with numSplits on dataset
 	 * 
@@ -37,6 +40,10 @@ public class CrossValidationSet {
 		this.dataset = dataset;
 		this.numSplits = numSplits;
 		this.randomize = randomize;
+		
+		if( randomize ){
+			order = CrossValidator.shuffledRows(dataset.size(), new Random(System.nanoTime()));
+		}
 	}
 	
 	/**
@@ -59,14 +66,7 @@ public class CrossValidationSet {
 		if( splitNum >= numSplits || splitNum < 0){
 			return null;
 		}else{
-			ArrayList<Example> data;
-			
-			if( randomize ){
-				data = (ArrayList<Example>)dataset.getData().clone();
-				Collections.shuffle(data, new Random(System.nanoTime()));
-			}else{
-				data = dataset.getData();
-			}
+			ArrayList<Example> data = dataset.getData();
 			
 			// this tends to make the last split more off-sized, but it will suffice
 			int partSize = (int)(data.size()/numSplits);
@@ -78,10 +78,12 @@ public class CrossValidationSet {
 			
 			for( int i = 0; i < data.size(); i++ ){
 				// check if we're in the test range
+				Example e = data.get(randomize ? order[i] : i);
+				
 				if( i >= begin && i < end ){
-					test.addData(data.get(i));
+					test.addData(e);
 				}else{
-					train.addData(data.get(i));
+					train.addData(e);
 				}
 			}
 			
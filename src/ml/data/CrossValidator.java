@@ -0,0 +1,232 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ml.classifiers.Classifier;
+import ml.classifiers.ClassifierFactory;
+import ml.classifiers.WeightedClassifier;
+
+/**
+ * k-fold cross-validation that trains and evaluates the folds in parallel.
+ * 
+ * The examples are shuffled once, with a seed, and each fold is just an array
+ * of example indices into the data set, so the folds never overlap and no
+ * examples are copied to build them.  Classifiers that can train on weights
+ * (WeightedClassifier) train on the whole data set with the test fold
+ * weighted 0; any other classifier gets a column copy of its training folds.
+ * Either way the test fold is classified in place, by index (see
+ * Classifier.classifyBatch(DataSet, int[])).
+ * The weighted classifiers share the data set's columns and feature bins, so
+ * the bins are cut using the values (not the labels) of the test fold too.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class CrossValidator {
+	private DataSet data;
+	private int[][] folds; // the example indices of each fold
+	
+	// how many folds to run at once, and optionally the pool to run them on
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+	
+	/**
+	 * Split the data into numFolds folds of (nearly) equal size
+	 * 
+	 * @param data
+	 * @param numFolds
+	 * @param seed the seed to shuffle the examples with
+	 */
+	public CrossValidator(DataSet data, int numFolds, long seed){
+		if( numFolds < 2 || numFolds > data.size() ){
+			throw new IllegalArgumentException("Number of folds must be between 2 and " + data.size() + ": " + numFolds);
+		}
+		
+		this.data = data;
+		int[] order = shuffledRows(data.size(), new Random(seed));
+		folds = new int[numFolds][];
+		
+		for( int fold = 0; fold < numFolds; fold++ ){
+			// spread the remainder over the first folds
+			int begin = (int)((long)order.length*fold/numFolds);
+			int end = (int)((long)order.length*(fold+1)/numFolds);
+			folds[fold] = new int[end-begin];
+			System.arraycopy(order, begin, folds[fold], 0, end-begin);
+		}
+	}
+	
+	/**
+	 * @param size
+	 * @param rand
+	 * @return the numbers 0 to size-1 in a random order
+	 */
+	static int[] shuffledRows(int size, Random rand){
+		int[] rows = new int[size];
+		
+		for( int i = 0; i < size; i++ ){
+			rows[i] = i;
+		}
+		
+		// Fisher-Yates
+		for( int i = size-1; i > 0; i-- ){
+			int j = rand.nextInt(i+1);
+			int temp = rows[i];
+			rows[i] = rows[j];
+			rows[j] = temp;
+		}
+		
+		return rows;
+	}
+	
+	/**
+	 * @return the number of folds
+	 */
+	public int getNumFolds(){
+		return folds.length;
+	}
+	
+	/**
+	 * Get the examples in a fold
+	 * 
+	 * @param fold the fold number, starting at 0
+	 * @return the indices of the examples in the fold
+	 */
+	public int[] getFold(int fold){
+		return folds[fold].clone();
+	}
+	
+	/**
+	 * Get the training weights for a fold: 1 for the examples in the other
+	 * folds and 0 for the examples in the fold
+	 * 
+	 * @param fold the fold number, starting at 0
+	 * @return the weight of each example of the data set
+	 */
+	public int[] getTrainingWeights(int fold){
+		int[] weights = new int[data.size()];
+		
+		for( int other = 0; other < folds.length; other++ ){
+			if( other != fold ){
+				for( int row: folds[other] ){
+					weights[row] = 1;
+				}
+			}
+		}
+		
+		return weights;
+	}
+	
+	/**
+	 * Train a new classifier on all but each fold and test it on that fold,
+	 * running the folds in parallel.
+	 * 
+	 * @param classifiers makes the classifier for each fold
+	 * @return the accuracy of each fold and the prediction for each example
+	 */
+	public CrossValidationResult run(final ClassifierFactory classifiers){
+		// the folds all read the columns (or sparse features) and class ids of
+		// this data set, so fill them in before the folds run in parallel
+		GridSearch.prepare(data);
+		data.getClassIds();
+		
+		ArrayList<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+		
+		for( int fold = 0; fold < folds.length; fold++ ){
+			final int f = fold;
+			
+			tasks.add(new Callable<double[]>() {
+				public double[] call() {
+					return runFold(classifiers.newClassifier(), f);
+				}
+			});
+		}
+		
+		ArrayList<double[]> foldPredictions = new ArrayList<double[]>();
+		
+		if( parallelism == 1 && executor == null ){
+			for( Callable<double[]> task: tasks ){
+				try{
+					foldPredictions.add(task.call());
+				}catch(Exception e){
+					throw new RuntimeException(e);
+				}
+			}
+		}else{
+			ExecutorService pool = executor != null ? executor : new ForkJoinPool(parallelism);
+			
+			try{
+				for( Future<double[]> predictions: pool.invokeAll(tasks) ){
+					foldPredictions.add(predictions.get());
+				}
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while cross-validating", e);
+			}catch(ExecutionException e){
+				throw new RuntimeException("Error cross-validating", e.getCause());
+			}finally{
+				if( pool != executor ){
+					pool.shutdown();
+				}
+			}
+		}
+		
+		return new CrossValidationResult(folds, foldPredictions, data.getLabelColumn());
+	}
+	
+	/**
+	 * Train on all but one fold and classify that fold
+	 * 
+	 * @param classifier a new classifier
+	 * @param fold the fold to test on
+	 * @return the predictions for the examples of the fold, in fold order
+	 */
+	private double[] runFold(Classifier classifier, int fold){
+		if( classifier instanceof WeightedClassifier ){
+			((WeightedClassifier)classifier).train(data, getTrainingWeights(fold));
+		}else{
+			int[] trainRows = new int[data.size()-folds[fold].length];
+			int numRows = 0;
+			
+			for( int other = 0; other < folds.length; other++ ){
+				if( other != fold ){
+					System.arraycopy(folds[other], 0, trainRows, numRows, folds[other].length);
+					numRows += folds[other].length;
+				}
+			}
+			
+			classifier.train(data.subset(trainRows));
+		}
+		
+		return classifier.classifyBatch(data, folds[fold]);
+	}
+	
+	/**
+	 * Set how many folds are run at the same time (by default, one per
+	 * processor).  Anything above 1 runs on a fork-join pool of that size
+	 * (unless an executor is set).
+	 * 
+	 * @param parallelism number of threads to run with
+	 */
+	public void setParallelism(int parallelism){
+		if( parallelism < 1 ){
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Run the folds on the given executor instead of creating a pool for
+	 * each call to run.  The executor is not shut down afterwards.
+	 * 
+	 * @param executor executor to run on, or null to go back to the default
+	 */
+	public void setExecutor(ExecutorService executor){
+		this.executor = executor;
+	}
+}
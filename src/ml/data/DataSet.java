@@ -1,10 +1,8 @@
 package ml.data;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -22,9 +20,38 @@ public class DataSet {
 	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
 	private HashSet<Double> labels = new HashSet<Double>();
 	
+	// column-major copy of the data: one column per feature index plus a label column.
+	// Built on demand by getColumns() and dropped whenever the examples change.
+	private double[][] columns;
+	private double[] labelColumn;
+	private FeatureBins featureBins;
+	private SparseFeatures sparseFeatures;
+	private double density = -1; // not computed yet
+	
+	// dense class ids: classLabels[classIds[i]] is the label of example i, with
+	// classLabels holding the distinct labels in increasing order
+	private double[] classLabels;
+	private int[] classIds;
+	
+	// whether the examples have been released and only the columns are kept
+	private boolean columnStorage = false;
+	
+	// whether every example has a value for every feature (e.g. data from a CSV
+	// file), in which case examples rebuilt from the columns keep their zeros
+	private boolean denseExamples = false;
+	
+	// a binary data set file whose features (dense columns or sparse rows)
+	// haven't been loaded yet
+	private DataSetFile columnFile;
+	
+	// data sets with fewer non-zero values than this are read through their
+	// non-zero values (see getSparseFeatures) rather than dense columns
+	public static final double SPARSE_DENSITY = 0.1;
+	
 	// some constants for different file types
 	public static final int CSVFILE = 0;
 	public static final int TEXTFILE = 1;
+	public static final int BINARYFILE = 2; // written by save()
 	
 	private int featureIndex;
 	private int biasFeature = -1;
@@ -37,31 +64,11 @@ public class DataSet {
 	 */
 	public DataSet(String filename, int fileType){
 		if( fileType == CSVFILE ){
-			// figure out how many columns there are then call
+			// parse the file straight into columns
 			try {
-				BufferedReader in = new BufferedReader(new FileReader(filename));
-
-				// ignore any lines at the beginning that start with #
-				String line = in.readLine();
-
-				while( line.startsWith("#")){
-					line = in.readLine();
-				}
-				
-				// parse the headers
-				String[] headers = line.split(",");
-				int labelIndex = headers.length-1;					
-				featureIndex = 0;
-					
-				for( int i = 0; i < headers.length; i++ ){
-					if( i != labelIndex ){
-						featureMap.put(featureIndex, headers[i]);
-						featureIndex++;
-					}
-				}
-					
-				CSVDataReader reader = new CSVDataReader(in, labelIndex);
-				initialize(reader);
+				MappedCSVReader reader = new MappedCSVReader(filename);
+				featureMap = reader.getFeatureMap();
+				initializeColumns(reader.getColumns(), reader.getLabelColumn());
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -70,9 +77,169 @@ public class DataSet {
 			TextDataReader reader = new TextDataReader(filename);
 			initialize(reader);
 			featureMap = reader.getFeatureMap();
+			featureIndex = featureMap.size();
+		}else if( fileType == BINARYFILE ){
+			try {
+				initializeFile(new DataSetFile(filename));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Create a new data set from a text file, hashing the words into features
+	 * (see FeatureHasher) instead of numbering them
+	 * 
+	 * @param filename the location of the text file
+	 * @param hasher
+	 */
+	public DataSet(String filename, FeatureHasher hasher){
+		TextDataReader reader = new TextDataReader(filename, hasher);
+		initialize(reader);
+		featureMap = reader.getFeatureMap();
+		featureIndex = hasher.getNumFeatures();
+	}
+	
+	/**
+	 * Create a new data set from a text file, hashing the words into features
+	 * (see FeatureHasher) and reading the file with several threads.  The result
+	 * is the same as DataSet(filename, hasher).
+	 * 
+	 * @param filename the location of the text file
+	 * @param hasher
+	 * @param numThreads the number of threads to read with
+	 */
+	public DataSet(String filename, FeatureHasher hasher, int numThreads){
+		try {
+			ParallelDataLoader loader = new ParallelDataLoader(filename, hasher, numThreads);
+			featureMap = loader.getFeatureMap();
+			addData(loader.getExamples());
+			featureIndex = hasher.getNumFeatures();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Create a new data set, reading the file with several threads.  The result
+	 * is the same as DataSet(filename, fileType).
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType what type of file, using the class defined constants (e.g. CSVFILE)
+	 * @param numThreads the number of threads to read with
+	 */
+	public DataSet(String filename, int fileType, int numThreads){
+		try {
+			ParallelDataLoader loader = new ParallelDataLoader(filename, fileType, numThreads);
+			featureMap = loader.getFeatureMap();
+			
+			if( fileType == CSVFILE ){
+				initializeColumns(loader.getColumns(), loader.getLabelColumn());
+			}else{
+				addData(loader.getExamples());
+				featureIndex = featureMap.size();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Populate this dataset from data that is already in columns.  The data
+	 * set starts out using column storage.
+	 * 
+	 * @param newColumns the feature values, indexed by feature index then example
+	 * @param newLabels the label of each example
+	 */
+	private void initializeColumns(double[][] newColumns, double[] newLabels){
+		columns = newColumns;
+		labelColumn = newLabels;
+		featureIndex = newColumns.length;
+		data = null;
+		columnStorage = true;
+		denseExamples = true;
+		
+		for( int i = 0; i < newLabels.length; i++ ){
+			// labels tend to come in runs, which saves boxing most of them
+			if( i == 0 || newLabels[i] != newLabels[i-1] ){
+				labels.add(newLabels[i]);
+			}
 		}
 	}
 	
+	/**
+	 * Populate this dataset from a binary data set file.  Only the labels are
+	 * read up front and the data set starts out in column storage.  The features
+	 * are copied out of the file the first time they're needed: dense files into
+	 * the columns, sparse files into the non-zero values (see getSparseFeatures)
+	 * or, if asked for, the examples.
+	 * 
+	 * The file is memory-mapped, so several JVMs opening it share its pages
+	 * through the page cache, but what's copied out of it (e.g. the columns) is
+	 * on each JVM's own heap.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	private void initializeFile(DataSetFile file) throws IOException{
+		featureMap = file.getFeatureMap();
+		columnFile = file;
+		labelColumn = new double[file.size()];
+		classLabels = file.getClassLabels();
+		classIds = file.getClassIds();
+		
+		for( int i = 0; i < classIds.length; i++ ){
+			labelColumn[i] = classLabels[classIds[i]];
+		}
+		
+		for( double label: classLabels ){
+			labels.add(label);
+		}
+		
+		featureIndex = file.getNumFeatures();
+		data = null;
+		columnStorage = true;
+		denseExamples = file.hasDenseExamples();
+	}
+	
+	/**
+	 * @return whether the features are still in a sparse data set file
+	 */
+	private boolean hasSparseFile(){
+		return columnFile != null && columnFile.getLayout() == DataSetFile.SPARSE;
+	}
+	
+	/**
+	 * Save this data set to a binary file that can be opened again with
+	 * DataSet(filename, BINARYFILE).  Sparse data sets (see isSparse) are saved
+	 * as their non-zero values; otherwise data sets in column storage or with
+	 * mostly non-zero features are saved as columns, the rest as sparse examples.
+	 * 
+	 * Opening the file maps it into memory, so JVMs on the same host share the
+	 * raw file pages, but the columns (or non-zero values) each one reads out of
+	 * it are a copy on its own heap.
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void save(String filename) throws IOException{
+		DataSetFile.write(this, filename);
+	}
+	
+	/**
+	 * Create a data set from data that is already in columns.  The data set
+	 * starts out using column storage and owns the arrays afterwards.
+	 * 
+	 * @param featureMap the mapping from feature indices to feature names
+	 * @param columns the feature values, indexed by feature index then example
+	 * @param labelColumn the label of each example
+	 */
+	public DataSet(HashMap<Integer, String> featureMap, double[][] columns, double[] labelColumn){
+		this.featureMap = new HashMap<Integer, String>(featureMap);
+		initializeColumns(columns, labelColumn);
+	}
+	
 	/**
 	 * Read all of the data from the reader and populate this dataset.
 	 * 
@@ -113,8 +280,17 @@ public class DataSet {
 	 * @return dataset
 	 */
 	public DataSet createDatasetWithBagging() {
-		Random rand = new Random();
-		
+		return createDatasetWithBagging(new Random());
+	}
+	
+	/**
+	 * Generates a data set containing a subset of examples present in this current
+	 * dataset, sampled using rand. Used for bootstrap aggregate bagging.
+	 * 
+	 * @param rand the random number generator to sample with
+	 * @return dataset
+	 */
+	public DataSet createDatasetWithBagging(Random rand) {
 		// Create new copy of our dataset with our feature map
 		DataSet result = new DataSet(getFeatureMap());
 		
@@ -122,11 +298,48 @@ public class DataSet {
 		ArrayList<Example> data = getData(); 
 		
 		for (int i = 0; i < data.size(); i++)
-			result.addData(data.get(rand.nextInt(getData().size())));
+			result.addData(data.get(rand.nextInt(data.size())));
 		
 		return result;
 	}
 	
+	/**
+	 * Draw a bootstrap sample of this data set (size() examples with replacement)
+	 * without copying any examples.  The sample is returned as the number of times
+	 * each example was drawn, which can be used as training weights (see
+	 * DecisionTreeClassifier.train(DataSet, int[])).
+	 * 
+	 * @param rand the random number generator to sample with
+	 * @return the number of times each example was drawn, in example order
+	 */
+	public int[] bootstrapWeights(Random rand) {
+		int size = size();
+		int[] weights = new int[size];
+		
+		for (int i = 0; i < size; i++)
+			weights[rand.nextInt(size)]++;
+		
+		return weights;
+	}
+	
+	/**
+	 * Draw a bootstrap sample from some of the examples of this data set
+	 * (rows.length draws with replacement from rows), e.g. from the training
+	 * folds of a cross-validation.
+	 * 
+	 * @param rand the random number generator to sample with
+	 * @param rows the indices of the examples to sample from
+	 * @return the number of times each example was drawn, in example order
+	 */
+	public int[] bootstrapWeights(Random rand, int[] rows) {
+		int[] weights = new int[size()];
+		
+		for (int i = 0; i < rows.length; i++)
+			weights[rows[rand.nextInt(rows.length)]]++;
+		
+		return weights;
+	}
+	
 	/**
 	 * Get the mapping from feature indices to feature names.  This is
 	 * mostly useful when trying to print out the final models.
@@ -138,14 +351,341 @@ public class DataSet {
 	}	
 	
 	/**
-	 * Get the examples associated with this data set
+	 * Get the examples associated with this data set.  If the data set is
+	 * using column storage, the examples are rebuilt from the columns (or read
+	 * from a sparse binary file) and the data set goes back to storing examples.
 	 * 
 	 * @return the examples
 	 */
 	public ArrayList<Example> getData(){
+		if( hasSparseFile() ){
+			try{
+				data = columnFile.readExamples();
+			}catch(IOException e){
+				throw new RuntimeException("Error reading examples", e);
+			}
+			
+			columnFile = null;
+			columnStorage = false;
+		}else if( columnStorage ){
+			double[][] columns = getColumns();
+			data = new ArrayList<Example>(labelColumn.length);
+			
+			for( int i = 0; i < labelColumn.length; i++ ){
+				Example e = new Example();
+				e.setLabel(labelColumn[i]);
+				
+				for( int f = 0; f < columns.length; f++ ){
+					if( denseExamples || columns[f][i] != 0.0 ){
+						e.addFeature(f, columns[f][i]);
+					}
+				}
+				
+				data.add(e);
+			}
+			
+			columnStorage = false;
+		}
+		
 		return data;
 	}
 	
+	/**
+	 * Get the number of examples in this data set
+	 * 
+	 * @return the number of examples
+	 */
+	public int size(){
+		return columnStorage ? labelColumn.length : data.size();
+	}
+	
+	/**
+	 * Get the feature values of this data set in column-major order, i.e.
+	 * getColumns()[featureIndex][example].  Features that an example doesn't
+	 * have are 0.0.  The columns are built the first time this is called and
+	 * cached until examples are added, so changes made directly to the Example
+	 * objects afterwards will NOT be reflected.  The cached columns (and the
+	 * label column, class ids and feature bins) are built under a lock, so several
+	 * threads can share a data set as long as no examples are added.
+	 * 
+	 * @return the feature columns, indexed by feature index
+	 */
+	public synchronized double[][] getColumns(){
+		if( columns == null ){
+			if( columnFile != null ){
+				columns = columnFile.readColumns();
+				columnFile = null;
+			}else{
+				buildColumns();
+			}
+		}
+		
+		return columns;
+	}
+	
+	/**
+	 * Get the labels of this data set in the same order as the examples.
+	 * 
+	 * @return the label column
+	 */
+	public synchronized double[] getLabelColumn(){
+		if( labelColumn == null ){
+			// don't build all of the columns (which can be huge for sparse data) just for the labels
+			double[] newLabels = new double[data.size()];
+			
+			for( int i = 0; i < newLabels.length; i++ ){
+				newLabels[i] = data.get(i).getLabel();
+			}
+			
+			labelColumn = newLabels;
+		}
+		
+		return labelColumn;
+	}
+	
+	/**
+	 * Get the distinct labels of this data set in increasing order.  The position
+	 * of a label in this array is its class id.
+	 * 
+	 * @return the label of each class id
+	 */
+	public synchronized double[] getClassLabels(){
+		if( classLabels == null ){
+			double[] sorted = new double[labels.size()];
+			int i = 0;
+			
+			for( double label: labels ){
+				sorted[i++] = label;
+			}
+			
+			Arrays.sort(sorted);
+			classLabels = sorted;
+		}
+		
+		return classLabels;
+	}
+	
+	/**
+	 * @return the number of distinct labels in this data set
+	 */
+	public int getNumClasses(){
+		return labels.size();
+	}
+	
+	/**
+	 * Get the class id of a label
+	 * 
+	 * @param label
+	 * @return the class id of label, or -1 if no example in this data set has that label
+	 */
+	public int getClassId(double label){
+		int id = Arrays.binarySearch(getClassLabels(), label);
+		return id >= 0 ? id : -1;
+	}
+	
+	/**
+	 * Get the class id of each example (see getClassLabels()), in the same order as
+	 * the examples.  Cached like the columns.
+	 * 
+	 * @return the class ids
+	 */
+	public synchronized int[] getClassIds(){
+		if( classIds == null ){
+			double[] labelColumn = getLabelColumn();
+			int[] ids = new int[labelColumn.length];
+			
+			for( int i = 0; i < ids.length; i++ ){
+				ids[i] = getClassId(labelColumn[i]);
+			}
+			
+			classIds = ids;
+		}
+		
+		return classIds;
+	}
+	
+	/**
+	 * Get the feature columns quantized into at most FeatureBins.MAX_BINS bins
+	 * per feature.  Like the columns, the bins are built the first time this is
+	 * called and cached until examples are added.
+	 * 
+	 * @return the binned features
+	 */
+	public synchronized FeatureBins getFeatureBins(){
+		if( featureBins == null ){
+			featureBins = new FeatureBins(getColumns(), FeatureBins.MAX_BINS);
+		}
+		
+		return featureBins;
+	}
+	
+	/**
+	 * Get the non-zero features of this data set, indexed by feature and by
+	 * example.  Like the columns, the index is built the first time this is
+	 * called and cached until examples are added.  For sparse data it's much
+	 * smaller than the columns and, unlike them, isn't needed to build it.
+	 * 
+	 * @return the non-zero features
+	 */
+	public synchronized SparseFeatures getSparseFeatures(){
+		if( sparseFeatures == null ){
+			if( hasSparseFile() ){
+				sparseFeatures = columnFile.readSparseFeatures();
+			}else if( columnStorage ){
+				sparseFeatures = new SparseFeatures(getColumns(), size());
+			}else{
+				sparseFeatures = new SparseFeatures(data, featureIndex);
+			}
+		}
+		
+		return sparseFeatures;
+	}
+	
+	/**
+	 * Get the fraction of the feature values of this data set that are non-zero.
+	 * Cached like the columns.
+	 * 
+	 * @return the fraction of non-zero values, between 0 and 1
+	 */
+	public synchronized double getDensity(){
+		if( density < 0 ){
+			long numNonZeros = 0;
+			
+			if( hasSparseFile() ){
+				getSparseFeatures();
+			}
+			
+			if( sparseFeatures != null ){
+				numNonZeros = sparseFeatures.getNumNonZeros();
+			}else if( columnStorage ){
+				for( double[] column: getColumns() ){
+					for( double value: column ){
+						if( value != 0.0 ){
+							numNonZeros++;
+						}
+					}
+				}
+			}else{
+				for( Example e: data ){
+					for( int f: e.getFeatureSet() ){
+						if( f < featureIndex && e.getFeature(f) != 0.0 ){
+							numNonZeros++;
+						}
+					}
+				}
+			}
+			
+			long numValues = (long)size()*featureIndex;
+			density = numValues == 0 ? 0.0 : numNonZeros/(double)numValues;
+		}
+		
+		return density;
+	}
+	
+	/**
+	 * @return whether few enough of the feature values are non-zero (see
+	 * SPARSE_DENSITY) that the data set should be read through getSparseFeatures()
+	 * instead of getColumns(), which would take examples times feature indices
+	 * doubles
+	 */
+	public boolean isSparse(){
+		return getDensity() < SPARSE_DENSITY;
+	}
+	
+	/**
+	 * Switch this data set to column storage: the columns are built and the
+	 * Example objects are released, which saves a lot of memory on large data
+	 * sets.  Calling getData() or addData() afterwards switches back.
+	 */
+	public void useColumnStorage(){
+		if( !columnStorage ){
+			getColumns();
+			data = null;
+			columnStorage = true;
+		}
+	}
+	
+	/**
+	 * @return whether only the columns (and not the examples) are being stored
+	 */
+	public boolean isColumnStorage(){
+		return columnStorage;
+	}
+	
+	/**
+	 * @return whether every example has a value for every feature (only known
+	 * once the columns have been built)
+	 */
+	boolean hasDenseExamples(){
+		return denseExamples;
+	}
+	
+	/**
+	 * @return the number of feature indices, i.e. the number of feature columns
+	 */
+	int getNumFeatureIndices(){
+		return featureIndex;
+	}
+	
+	/**
+	 * Replace the examples and their features, e.g. with hashed features (see
+	 * FeatureHasher).  The labels have to stay the same.
+	 * 
+	 * @param newFeatureMap the mapping from the new feature indices to their names
+	 * @param numFeatureIndices the number of new feature indices
+	 * @param examples the new examples, in the same order
+	 */
+	void replaceExamples(HashMap<Integer, String> newFeatureMap, int numFeatureIndices, ArrayList<Example> examples){
+		clearColumns();
+		featureMap = newFeatureMap;
+		featureIndex = numFeatureIndices;
+		biasFeature = -1;
+		data = examples;
+		columnStorage = false;
+		denseExamples = false;
+	}
+	
+	/**
+	 * Drop the cached columns (and everything built from them) since the examples changed
+	 */
+	private void clearColumns(){
+		columnFile = null;
+		columns = null;
+		labelColumn = null;
+		featureBins = null;
+		sparseFeatures = null;
+		density = -1;
+		classLabels = null;
+		classIds = null;
+	}
+	
+	/**
+	 * Build the column-major copy of the examples
+	 */
+	private void buildColumns(){
+		int numExamples = data.size();
+		double[][] newColumns = new double[featureIndex][numExamples];
+		double[] newLabels = new double[numExamples];
+		long numValues = 0;
+		
+		for( int i = 0; i < numExamples; i++ ){
+			Example e = data.get(i);
+			newLabels[i] = e.getLabel();
+			
+			for( int f: e.getFeatureSet() ){
+				// features outside the feature map can't be split on, so skip them
+				if( f < featureIndex ){
+					newColumns[f][i] = e.getFeature(f);
+					numValues++;
+				}
+			}
+		}
+		
+		denseExamples = numValues == (long)numExamples*featureIndex;
+		columns = newColumns;
+		labelColumn = newLabels;
+	}
+	
 	/**
 	 * Add all of the examples in addMe to this data set.
 	 * Note: this does NOT change the feature map for this
@@ -156,6 +696,9 @@ public class DataSet {
 	 * @param addMe
 	 */
 	public void addData(ArrayList<Example> addMe){
+		ArrayList<Example> data = getData();
+		clearColumns();
+		
 		for( Example e: addMe ){
 			data.add(e);
 			labels.add(e.getLabel());
@@ -173,7 +716,8 @@ public class DataSet {
 	 * @param addMe
 	 */
 	public void addData(Example e){
-		data.add(e);
+		getData().add(e);
+		clearColumns();
 		labels.add(e.getLabel());
 	}
 	
@@ -205,30 +749,82 @@ public class DataSet {
 	 * @return a split of the data
 	 */
 	public DataSetSplit split(double fraction){
-		ArrayList<Example> newdata = (ArrayList<Example>)data.clone();
-		Collections.shuffle(newdata, new Random(System.nanoTime()));
+		// shuffle the indices rather than the examples, so the halves are
+		// column copies (see subset)
+		int[] order = CrossValidator.shuffledRows(size(), new Random(System.nanoTime()));
+		int trainSize = (int)Math.floor(order.length*fraction);
 		
-		ArrayList<Example> train = new ArrayList<Example>();
-		ArrayList<Example> test = new ArrayList<Example>();
+		return new DataSetSplit(subset(Arrays.copyOfRange(order, 0, trainSize)),
+			subset(Arrays.copyOfRange(order, trainSize, order.length)));
+	}
+	
+	/**
+	 * Create a new data set holding some of the examples of this one, in column
+	 * storage.  Only the columns are copied, so this is much cheaper than
+	 * building a data set from the examples.  Sparse data sets (see isSparse)
+	 * are copied from the rows of their non-zero values into examples instead.
+	 * 
+	 * @param rows the indices of the examples to keep, in the order to keep them
+	 * @return the new data set
+	 */
+	public DataSet subset(int[] rows){
+		if( isSparse() ){
+			return sparseSubset(rows);
+		}
 		
-		int trainSize = (int)Math.floor(data.size()*fraction);
+		double[][] columns = getColumns();
+		double[] labelColumn = getLabelColumn();
+		double[][] newColumns = new double[columns.length][rows.length];
+		double[] newLabels = new double[rows.length];
 		
-		for( int i = 0; i < newdata.size(); i++ ){
-			if( i < trainSize ){
-				train.add(newdata.get(i));
-			}else{
-				test.add(newdata.get(i));
+		for( int f = 0; f < columns.length; f++ ){
+			double[] column = columns[f];
+			double[] newColumn = newColumns[f];
+			
+			for( int i = 0; i < rows.length; i++ ){
+				newColumn[i] = column[rows[i]];
 			}
 		}
 		
-		DataSet dTrain = new DataSet(featureMap);
-		dTrain.addData(train);
+		for( int i = 0; i < rows.length; i++ ){
+			newLabels[i] = labelColumn[rows[i]];
+		}
 		
-		DataSet dTest = new DataSet(featureMap);
-		dTest.addData(test);
-
-		return new DataSetSplit(dTrain, dTest);
-	}	
+		DataSet subset = new DataSet(featureMap, newColumns, newLabels);
+		subset.denseExamples = denseExamples;
+		return subset;
+	}
+	
+	/**
+	 * Create a new data set holding some of the examples of a sparse data set,
+	 * rebuilt from the rows of its non-zero values
+	 * 
+	 * @param rows the indices of the examples to keep, in the order to keep them
+	 * @return the new data set
+	 */
+	private DataSet sparseSubset(int[] rows){
+		SparseFeatures sparse = getSparseFeatures();
+		int[] rowFeatures = sparse.getRowFeatures();
+		double[] rowValues = sparse.getRowValues();
+		double[] labelColumn = getLabelColumn();
+		ArrayList<Example> examples = new ArrayList<Example>(rows.length);
+		
+		for( int row: rows ){
+			Example e = new Example();
+			e.setLabel(labelColumn[row]);
+			
+			for( int i = sparse.getRowStart(row); i < sparse.getRowStart(row+1); i++ ){
+				e.addFeature(rowFeatures[i], rowValues[i]);
+			}
+			
+			examples.add(e);
+		}
+		
+		DataSet subset = new DataSet(featureMap);
+		subset.featureIndex = featureIndex;
+		subset.addData(examples);
+		return subset;
+	}
 	
 	/**
 	 * Get a cross-validation of this data set with num splits.  The
@@ -271,6 +867,7 @@ public class DataSet {
 		
 		// add the bias to the feature mapping
 		biased.featureMap.put(biased.biasFeature, "bias");
+		biased.featureIndex++;
 		
 		// iterate through all of the features and add the bias using addBiasFeature from
 		// the *new* dataset
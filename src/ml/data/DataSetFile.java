@@ -0,0 +1,681 @@
+package ml.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary file format for data sets, so that they can be opened without
+ * parsing any text (see DataSet.save and DataSet.BINARYFILE).
+ * 
+ * All values are little-endian.  The file starts with a header:
+ * 
+ * magic (int), version (int), layout (int), flags (int), number of examples (int),
+ * number of feature indices (int), the feature map as a count (int) followed by
+ * index (int), name length (int) and UTF-8 name bytes for each feature, and the
+ * label table as a count (int) followed by the labels (double) in class id order.
+ * 
+ * Then comes the class id (int) of every example followed by the features, either
+ * DENSE: one column of doubles per feature index, or SPARSE (CSR): a long offset
+ * per example plus one at the end, then the feature index (int) and the value
+ * (double) of every non-zero feature, example by example.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+class DataSetFile {
+	public static final int MAGIC = 0x53444652; // "RFDS" in little-endian
+	public static final int VERSION = 1;
+	
+	// layouts
+	public static final int DENSE = 0;
+	public static final int SPARSE = 1;
+	
+	// flags
+	public static final int DENSE_EXAMPLES = 1; // every example has every feature, zeros included
+	
+	// blocks are mapped a piece at a time to stay under the 2GB limit of a buffer
+	private static final int MAX_MAP_VALUES = 1 << 27;
+	
+	// how many examples scan copies out of dense columns at a time
+	private static final int SCAN_BLOCK_SIZE = 4096;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private String filename;
+	private int layout;
+	private int flags;
+	private int numExamples;
+	private int numFeatures;
+	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+	private double[] classLabels;
+	private int[] classIds;
+	
+	// where the class ids and the feature block start
+	private long classIdStart;
+	private long featureStart;
+	
+	/**
+	 * Open a data set file and read everything but the features
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public DataSetFile(String filename) throws IOException{
+		this(filename, true);
+	}
+	
+	/**
+	 * Open a data set file and read its header
+	 * 
+	 * @param filename
+	 * @param readClassIds whether to read the class ids too, or leave them in the
+	 * file (for scan)
+	 * @throws IOException
+	 */
+	public DataSetFile(String filename, boolean readClassIds) throws IOException{
+		this.filename = filename;
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			ByteBuffer header = map(channel, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+			
+			if( header.remaining() < 8 || header.getInt() != MAGIC ){
+				throw new IOException(filename + " is not a data set file");
+			}
+			
+			int version = header.getInt();
+			
+			if( version != VERSION ){
+				throw new IOException(filename + " has unsupported version " + version);
+			}
+			
+			layout = header.getInt();
+			flags = header.getInt();
+			numExamples = header.getInt();
+			numFeatures = header.getInt();
+			int numNames = header.getInt();
+			
+			if( layout != DENSE && layout != SPARSE ){
+				throw new IOException(filename + " has an unknown layout: " + layout);
+			}
+			
+			if( numExamples < 0 || numFeatures < 0 || numNames < 0 ){
+				throw new IOException(filename + " has a corrupt header: " + numExamples + " examples, " +
+					numFeatures + " features, " + numNames + " feature names");
+			}
+			
+			// the sparse features are indexed by feature in one array (see SparseFeatures)
+			if( numFeatures > Integer.MAX_VALUE-8 ){
+				throw new IOException(filename + " has too many features to index: " + numFeatures);
+			}
+			
+			for( int i = 0; i < numNames; i++ ){
+				int index = header.getInt();
+				int length = header.getInt();
+				
+				if( length < 0 || length > header.remaining() ){
+					throw new IOException(filename + " has a corrupt name for feature " + index);
+				}
+				
+				byte[] name = new byte[length];
+				header.get(name);
+				featureMap.put(index, new String(name, UTF8));
+			}
+			
+			int numLabels = header.getInt();
+			
+			if( numLabels < 0 || numLabels > header.remaining()/8 ){
+				throw new IOException(filename + " has a corrupt label table: " + numLabels + " labels");
+			}
+			
+			classLabels = new double[numLabels];
+			header.asDoubleBuffer().get(classLabels);
+			header.position(header.position() + 8*classLabels.length);
+			
+			classIdStart = header.position();
+			featureStart = classIdStart + 4L*numExamples;
+			checkSize(channel);
+			
+			if( readClassIds ){
+				classIds = new int[numExamples];
+				
+				for( int start = 0; start < numExamples; start += MAX_MAP_VALUES ){
+					int length = Math.min(MAX_MAP_VALUES, numExamples-start);
+					map(channel, classIdStart + 4L*start, 4L*length).asIntBuffer().get(classIds, start, length);
+				}
+				
+				for( int i = 0; i < numExamples; i++ ){
+					if( classIds[i] < 0 || classIds[i] >= classLabels.length ){
+						throw new IOException(filename + " has a bad class id for example " + i + ": " + classIds[i]);
+					}
+				}
+			}
+		}catch(BufferUnderflowException e){
+			throw new IOException(filename + " is truncated", e);
+		}catch(IndexOutOfBoundsException e){
+			throw new IOException(filename + " is truncated", e);
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Make sure the class ids and the feature block the header describes fit in
+	 * the file, before any of them are mapped
+	 * 
+	 * @param channel
+	 * @throws IOException if the file is too short
+	 */
+	private void checkSize(FileChannel channel) throws IOException{
+		// the counts are checked against what's left by division, since the
+		// block sizes could overflow a long in a corrupt header
+		long remaining = channel.size() - featureStart;
+		boolean fits;
+		
+		if( layout == DENSE ){
+			fits = remaining >= 0 && (numExamples == 0 || numFeatures <= remaining/8/numExamples);
+		}else{
+			// the offsets, then the index (int) and value (double) of each non-zero feature
+			remaining -= 8L*(numExamples+1);
+			fits = remaining >= 0;
+			
+			if( fits ){
+				long nonZeros = map(channel, featureStart + 8L*numExamples, 8).getLong(0);
+				fits = nonZeros >= 0 && nonZeros <= remaining/12;
+			}
+		}
+		
+		if( !fits ){
+			throw new IOException(filename + " is truncated or corrupt: its features don't fit in the file");
+		}
+	}
+	
+	/**
+	 * Read the feature block as columns.  Each dense column is copied out of the
+	 * mapped file in bulk; sparse features are spread out into columns.
+	 * 
+	 * @return the feature columns
+	 */
+	public double[][] readColumns(){
+		if( layout == SPARSE ){
+			SparseFeatures sparse = readSparseFeatures();
+			int[] rowFeatures = sparse.getRowFeatures();
+			double[] rowValues = sparse.getRowValues();
+			double[][] columns = new double[numFeatures][numExamples];
+			
+			for( int i = 0; i < numExamples; i++ ){
+				for( int p = sparse.getRowStart(i); p < sparse.getRowStart(i+1); p++ ){
+					columns[rowFeatures[p]][i] = rowValues[p];
+				}
+			}
+			
+			return columns;
+		}
+		
+		try{
+			FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			
+			try{
+				double[][] columns = new double[numFeatures][numExamples];
+				
+				for( int f = 0; f < numFeatures; f++ ){
+					long columnStart = featureStart + 8L*f*numExamples;
+					
+					for( int start = 0; start < numExamples; start += MAX_MAP_VALUES ){
+						int length = Math.min(MAX_MAP_VALUES, numExamples-start);
+						map(channel, columnStart + 8L*start, 8L*length).asDoubleBuffer().get(columns[f], start, length);
+					}
+				}
+				
+				return columns;
+			}finally{
+				channel.close();
+			}
+		}catch(IOException e){
+			throw new RuntimeException("Error reading columns from " + filename, e);
+		}
+	}
+	
+	/**
+	 * Read the sparse feature block straight into the rows of a SparseFeatures,
+	 * copying the feature indices and values out of the mapped file in bulk
+	 * without building any examples
+	 * 
+	 * @return the non-zero features
+	 */
+	public SparseFeatures readSparseFeatures(){
+		if( layout != SPARSE ){
+			throw new RuntimeException(filename + " doesn't hold sparse examples");
+		}
+		
+		try{
+			FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			
+			try{
+				ByteBuffer offsets = map(channel, featureStart, 8L*(numExamples+1));
+				long nonZeros = offsets.getLong(8*numExamples);
+				
+				if( nonZeros > Integer.MAX_VALUE-8 ){
+					throw new IOException(filename + " has too many features to index: " + nonZeros);
+				}
+				
+				int[] rowStart = new int[numExamples+1];
+				int[] rowFeatures = new int[(int)nonZeros];
+				double[] rowValues = new double[(int)nonZeros];
+				long indexStart = featureStart + 8L*(numExamples+1);
+				long valueStart = indexStart + 4L*nonZeros;
+				
+				for( int i = 0; i <= numExamples; i++ ){
+					long offset = offsets.getLong(8*i);
+					
+					if( offset < (i == 0 ? 0 : rowStart[i-1]) || offset > nonZeros ){
+						throw new IOException(filename + " has a corrupt offset for example " + i);
+					}
+					
+					rowStart[i] = (int)offset;
+				}
+				
+				for( int start = 0; start < nonZeros; start += MAX_MAP_VALUES ){
+					int length = (int)Math.min(MAX_MAP_VALUES, nonZeros-start);
+					map(channel, indexStart + 4L*start, 4L*length).asIntBuffer().get(rowFeatures, start, length);
+					map(channel, valueStart + 8L*start, 8L*length).asDoubleBuffer().get(rowValues, start, length);
+				}
+				
+				return new SparseFeatures(numFeatures, rowStart, rowFeatures, rowValues);
+			}finally{
+				channel.close();
+			}
+		}catch(IOException e){
+			throw new RuntimeException("Error reading sparse features from " + filename, e);
+		}
+	}
+	
+	/**
+	 * Read the sparse feature block into examples
+	 * 
+	 * @return the examples
+	 * @throws IOException
+	 */
+	public ArrayList<Example> readExamples() throws IOException{
+		if( layout != SPARSE ){
+			throw new IOException(filename + " doesn't hold sparse examples");
+		}
+		
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			ArrayList<Example> examples = new ArrayList<Example>(numExamples);
+			ByteBuffer offsets = map(channel, featureStart, 8L*(numExamples+1));
+			long nonZeros = offsets.getLong(8*numExamples);
+			long indexStart = featureStart + 8L*(numExamples+1);
+			long valueStart = indexStart + 4L*nonZeros;
+			
+			// map the features a piece at a time, starting each piece on an example
+			int example = 0;
+			
+			while( example < numExamples ){
+				long first = offsets.getLong(8*example);
+				int last = example;
+				
+				while( last < numExamples && offsets.getLong(8*(last+1)) - first <= MAX_MAP_VALUES ){
+					last++;
+				}
+				
+				if( last == example ){
+					throw new IOException("Example " + example + " has too many features");
+				}
+				
+				long count = offsets.getLong(8*last) - first;
+				ByteBuffer indices = map(channel, indexStart + 4*first, 4*count);
+				ByteBuffer values = map(channel, valueStart + 8*first, 8*count);
+				
+				for( ; example < last; example++ ){
+					Example e = new Example();
+					e.setLabel(classLabels[classIds[example]]);
+					int begin = (int)(offsets.getLong(8*example) - first);
+					int end = (int)(offsets.getLong(8*(example+1)) - first);
+					
+					for( int i = begin; i < end; i++ ){
+						e.addFeature(indices.getInt(4*i), values.getDouble(8*i));
+					}
+					
+					examples.add(e);
+				}
+			}
+			
+			return examples;
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Read the examples one at a time, without keeping any of them around.  Only
+	 * a block of the dense columns (or a piece of the sparse features) is mapped
+	 * or copied into memory at once.
+	 * 
+	 * @param row reused for every example
+	 * @param visitor called with each example, in order
+	 * @throws IOException
+	 */
+	public void scan(DataSetStream.Row row, DataSetStream.Visitor visitor) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			row.setNumFeatures(numFeatures);
+			
+			if( layout == DENSE ){
+				ByteBuffer buffer = ByteBuffer.allocate(8*SCAN_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				int[] blockIds = new int[SCAN_BLOCK_SIZE];
+				double[][] block = new double[numFeatures][SCAN_BLOCK_SIZE];
+				
+				for( int start = 0; start < numExamples; start += SCAN_BLOCK_SIZE ){
+					int length = Math.min(SCAN_BLOCK_SIZE, numExamples-start);
+					read(channel, buffer, classIdStart + 4L*start, 4*length).asIntBuffer().get(blockIds, 0, length);
+					
+					for( int f = 0; f < numFeatures; f++ ){
+						long columnStart = featureStart + 8L*f*numExamples;
+						read(channel, buffer, columnStart + 8L*start, 8*length).asDoubleBuffer().get(block[f], 0, length);
+					}
+					
+					for( int i = 0; i < length; i++ ){
+						row.clear(start+i, classLabels[blockIds[i]]);
+						
+						for( int f = 0; f < numFeatures; f++ ){
+							row.setFeature(f, block[f][i]);
+						}
+						
+						visitor.visit(row);
+					}
+				}
+			}else{
+				ByteBuffer offsets = map(channel, featureStart, 8L*(numExamples+1));
+				long nonZeros = offsets.getLong(8*numExamples);
+				long indexStart = featureStart + 8L*(numExamples+1);
+				long valueStart = indexStart + 4L*nonZeros;
+				int example = 0;
+				
+				// map the features a piece at a time, like readExamples
+				while( example < numExamples ){
+					long first = offsets.getLong(8*example);
+					int last = example;
+					
+					while( last < numExamples && last-example < MAX_MAP_VALUES &&
+							offsets.getLong(8*(last+1)) - first <= MAX_MAP_VALUES ){
+						last++;
+					}
+					
+					if( last == example ){
+						throw new IOException("Example " + example + " has too many features");
+					}
+					
+					long count = offsets.getLong(8*last) - first;
+					ByteBuffer ids = map(channel, classIdStart + 4L*example, 4L*(last-example));
+					ByteBuffer indices = map(channel, indexStart + 4*first, 4*count);
+					ByteBuffer values = map(channel, valueStart + 8*first, 8*count);
+					
+					for( int e = example; e < last; e++ ){
+						row.clear(e, classLabels[ids.getInt(4*(e-example))]);
+						int begin = (int)(offsets.getLong(8*e) - first);
+						int end = (int)(offsets.getLong(8*(e+1)) - first);
+						
+						for( int i = begin; i < end; i++ ){
+							row.setFeature(indices.getInt(4*i), values.getDouble(8*i));
+						}
+						
+						visitor.visit(row);
+					}
+					
+					example = last;
+				}
+			}
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Write a data set to a file.  Sparse data sets (see DataSet.isSparse) are
+	 * written as their non-zero values, otherwise data sets in column storage or
+	 * where most of the features are non-zero are written as dense columns and
+	 * the rest as sparse examples.
+	 * 
+	 * @param data
+	 * @param filename
+	 * @throws IOException
+	 */
+	public static void write(DataSet data, String filename) throws IOException{
+		int numFeatures = data.getNumFeatureIndices();
+		int layout = !data.isSparse() && (data.isColumnStorage() || density(data, numFeatures) > 0.5) ? DENSE : SPARSE;
+		double[][] columns = layout == DENSE ? data.getColumns() : null;
+		int flags = layout == DENSE && data.hasDenseExamples() ? DENSE_EXAMPLES : 0;
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		try{
+			Writer out = new Writer(channel);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(layout);
+			out.putInt(flags);
+			out.putInt(data.size());
+			out.putInt(numFeatures);
+			out.putInt(data.getFeatureMap().size());
+			
+			for( Map.Entry<Integer, String> feature: data.getFeatureMap().entrySet() ){
+				byte[] name = (feature.getValue() == null ? "" : feature.getValue()).getBytes(UTF8);
+				out.putInt(feature.getKey());
+				out.putInt(name.length);
+				out.put(name);
+			}
+			
+			double[] classLabels = data.getClassLabels();
+			out.putInt(classLabels.length);
+			
+			for( double label: classLabels ){
+				out.putDouble(label);
+			}
+			
+			if( layout == DENSE ){
+				for( int id: data.getClassIds() ){
+					out.putInt(id);
+				}
+				
+				for( double[] column: columns ){
+					for( double value: column ){
+						out.putDouble(value);
+					}
+				}
+			}else{
+				// the non-zero values, without building the (mostly zero) columns
+				SparseFeatures sparse = data.getSparseFeatures();
+				int[] rowFeatures = sparse.getRowFeatures();
+				double[] rowValues = sparse.getRowValues();
+				
+				for( int id: data.getClassIds() ){
+					out.putInt(id);
+				}
+				
+				for( int i = 0; i <= sparse.size(); i++ ){
+					out.putLong(sparse.getRowStart(i));
+				}
+				
+				for( int feature: rowFeatures ){
+					out.putInt(feature);
+				}
+				
+				for( double value: rowValues ){
+					out.putDouble(value);
+				}
+			}
+			
+			out.flush();
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * @param data a data set that's storing examples
+	 * @param numFeatures
+	 * @return the fraction of the features that the examples have values for
+	 */
+	private static double density(DataSet data, int numFeatures){
+		long numValues = 0;
+		
+		for( Example e: data.getData() ){
+			numValues += e.getFeatureSet().size();
+		}
+		
+		return numValues/((double)data.size()*Math.max(1, numFeatures));
+	}
+	
+	/**
+	 * Map part of a file
+	 * 
+	 * @param channel
+	 * @param position
+	 * @param length
+	 * @return the mapped bytes, little-endian
+	 * @throws IOException
+	 */
+	private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException{
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+	
+	/**
+	 * Read part of a file into a buffer
+	 * 
+	 * @param channel
+	 * @param buffer the buffer to read into, which must have room for length bytes
+	 * @param position
+	 * @param length
+	 * @return the buffer, holding the bytes read
+	 * @throws IOException
+	 */
+	private static ByteBuffer read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException{
+		buffer.clear();
+		buffer.limit(length);
+		
+		while( buffer.hasRemaining() ){
+			if( channel.read(buffer, position + buffer.position()) < 0 ){
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * @return DENSE or SPARSE
+	 */
+	public int getLayout(){
+		return layout;
+	}
+	
+	/**
+	 * @return whether the examples had a value for every feature when they were written
+	 */
+	public boolean hasDenseExamples(){
+		return (flags & DENSE_EXAMPLES) != 0;
+	}
+	
+	/**
+	 * @return the number of examples in the file
+	 */
+	public int size(){
+		return numExamples;
+	}
+	
+	/**
+	 * @return the number of feature indices (columns)
+	 */
+	public int getNumFeatures(){
+		return numFeatures;
+	}
+	
+	/**
+	 * @return the mapping from feature indices to feature names
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		return featureMap;
+	}
+	
+	/**
+	 * @return the labels in class id order
+	 */
+	public double[] getClassLabels(){
+		return classLabels;
+	}
+	
+	/**
+	 * @return the class id of each example, or null if they were left in the file
+	 */
+	public int[] getClassIds(){
+		return classIds;
+	}
+	
+	/**
+	 * Buffered little-endian writes to a channel
+	 */
+	private static class Writer{
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		
+		public Writer(FileChannel channel){
+			this.channel = channel;
+		}
+		
+		private void ensureRoom(int bytes) throws IOException{
+			if( buffer.remaining() < bytes ){
+				flush();
+			}
+		}
+		
+		public void putInt(int value) throws IOException{
+			ensureRoom(4);
+			buffer.putInt(value);
+		}
+		
+		public void putLong(long value) throws IOException{
+			ensureRoom(8);
+			buffer.putLong(value);
+		}
+		
+		public void putDouble(double value) throws IOException{
+			ensureRoom(8);
+			buffer.putDouble(value);
+		}
+		
+		public void put(byte[] bytes) throws IOException{
+			for( int written = 0; written < bytes.length; ){
+				ensureRoom(1);
+				int length = Math.min(buffer.remaining(), bytes.length-written);
+				buffer.put(bytes, written, length);
+				written += length;
+			}
+		}
+		
+		public void flush() throws IOException{
+			buffer.flip();
+			
+			while( buffer.hasRemaining() ){
+				channel.write(buffer);
+			}
+			
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,344 @@
+package ml.data;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Reads the examples of a data set one at a time, as many times as needed,
+ * without ever holding all of them in memory.  This is for data sets that are
+ * too big to load into a DataSet, e.g. to train on them out of core.
+ * 
+ * Each scan hands every example, in file order, to a Visitor as a Row.  The Row
+ * is reused from example to example, so visitors must copy anything they want
+ * to keep.  CSV and binary data set files (see DataSet.save) are read through
+ * memory-mapped windows, text files line by line; a DataSet that's already in
+ * memory can be scanned too.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class DataSetStream {
+	private String filename;
+	private int fileType;
+	private DataSet data; // or the data set to scan
+	private FeatureHasher hasher; // for text files, if the words are hashed
+	
+	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+	private int numFeatures;
+	
+	/**
+	 * Open a data set file for scanning.  Only the headers are read.
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType DataSet.CSVFILE, DataSet.TEXTFILE or DataSet.BINARYFILE
+	 * @throws IOException
+	 */
+	public DataSetStream(String filename, int fileType) throws IOException{
+		this.filename = filename;
+		this.fileType = fileType;
+		
+		if( fileType == DataSet.CSVFILE ){
+			FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			
+			try{
+				MappedCSVReader headers = new MappedCSVReader(channel);
+				featureMap = headers.getFeatureMap();
+				numFeatures = featureMap.size(); // the label is the last column
+			}finally{
+				channel.close();
+			}
+		}else if( fileType == DataSet.BINARYFILE ){
+			DataSetFile file = new DataSetFile(filename, false);
+			featureMap = file.getFeatureMap();
+			numFeatures = file.getNumFeatures();
+		}else if( fileType != DataSet.TEXTFILE ){
+			throw new IllegalArgumentException("Unknown file type: " + fileType);
+		}
+	}
+	
+	/**
+	 * Open a text file for scanning, hashing the words into features (see
+	 * FeatureHasher), so the feature indices are known before the scan
+	 * 
+	 * @param filename the location of the text file
+	 * @param hasher
+	 */
+	public DataSetStream(String filename, FeatureHasher hasher){
+		this.filename = filename;
+		this.fileType = DataSet.TEXTFILE;
+		this.hasher = hasher;
+		numFeatures = hasher.getNumFeatures();
+	}
+	
+	/**
+	 * Scan a data set that's already in memory
+	 * 
+	 * @param data
+	 */
+	public DataSetStream(DataSet data){
+		this.data = data;
+		featureMap = data.getFeatureMap();
+		numFeatures = data.getNumFeatureIndices();
+	}
+	
+	/**
+	 * Read every example, in order
+	 * 
+	 * @param visitor called with each example
+	 * @throws IOException
+	 */
+	public void scan(Visitor visitor) throws IOException{
+		Row row = new Row();
+		row.setNumFeatures(numFeatures);
+		
+		if( data != null ){
+			scanDataSet(row, visitor);
+		}else if( fileType == DataSet.CSVFILE ){
+			scanCSV(row, visitor);
+		}else if( fileType == DataSet.BINARYFILE ){
+			new DataSetFile(filename, false).scan(row, visitor);
+		}else{
+			TextDataReader reader = new TextDataReader(filename, hasher);
+			int index = 0;
+			
+			while( reader.hasNext() ){
+				Example e = reader.next();
+				row.clear(index++, e.getLabel());
+				
+				for( int feature: e.getFeatureSet() ){
+					row.setFeature(feature, e.getFeature(feature));
+				}
+				
+				visitor.visit(row);
+			}
+			
+			// the words are numbered as they're first seen, the same way every scan
+			featureMap = reader.getFeatureMap();
+			numFeatures = hasher != null ? hasher.getNumFeatures() : featureMap.size();
+		}
+	}
+	
+	/**
+	 * Scan the examples (or columns) of the data set in memory
+	 * 
+	 * @param row
+	 * @param visitor
+	 */
+	private void scanDataSet(Row row, Visitor visitor){
+		if( data.isSparse() ){
+			// read the non-zero values rather than every feature index
+			SparseFeatures sparse = data.getSparseFeatures();
+			int[] rowFeatures = sparse.getRowFeatures();
+			double[] rowValues = sparse.getRowValues();
+			double[] labels = data.getLabelColumn();
+			
+			for( int i = 0; i < labels.length; i++ ){
+				row.clear(i, labels[i]);
+				
+				for( int p = sparse.getRowStart(i); p < sparse.getRowStart(i+1); p++ ){
+					row.setFeature(rowFeatures[p], rowValues[p]);
+				}
+				
+				visitor.visit(row);
+			}
+		}else if( data.isColumnStorage() ){
+			double[][] columns = data.getColumns();
+			double[] labels = data.getLabelColumn();
+			
+			for( int i = 0; i < labels.length; i++ ){
+				row.clear(i, labels[i]);
+				
+				for( int f = 0; f < columns.length; f++ ){
+					row.setFeature(f, columns[f][i]);
+				}
+				
+				visitor.visit(row);
+			}
+		}else{
+			ArrayList<Example> examples = data.getData();
+			
+			for( int i = 0; i < examples.size(); i++ ){
+				Example e = examples.get(i);
+				row.clear(i, e.getLabel());
+				
+				for( int feature: e.getFeatureSet() ){
+					row.setFeature(feature, e.getFeature(feature));
+				}
+				
+				visitor.visit(row);
+			}
+		}
+	}
+	
+	/**
+	 * Scan the data lines of a CSV file with MappedCSVReader, parsing each line
+	 * straight into the row
+	 * 
+	 * @param row
+	 * @param visitor
+	 * @throws IOException
+	 */
+	private void scanCSV(final Row row, final Visitor visitor) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			new MappedCSVReader(channel).scan(channel, new MappedCSVReader.RowVisitor(){
+				public void startRow(int index){
+					row.clear(index, 0.0);
+				}
+				
+				public void value(int column, double value){
+					if( column == numFeatures ){
+						row.label = value;
+					}else{
+						row.setFeature(column, value);
+					}
+				}
+				
+				public void endRow(){
+					visitor.visit(row);
+				}
+			});
+		}finally{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * @return the number of feature indices.  For text files this is only known
+	 * after a scan.
+	 */
+	public int getNumFeatures(){
+		return numFeatures;
+	}
+	
+	/**
+	 * @return the mapping from feature indices to feature names.  For text files
+	 * this is only known after a scan.
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		return featureMap;
+	}
+	
+	/**
+	 * Receives the examples of a scan
+	 */
+	public interface Visitor {
+		public void visit(Row row);
+	}
+	
+	/**
+	 * One example of a scan.  The values are held densely, indexed by feature, so
+	 * any feature can be looked up directly, and only the non-zero ones are
+	 * cleared between examples.
+	 */
+	public static class Row {
+		private int index;
+		private double label;
+		private double[] values = new double[0];
+		private int[] nonZeros = new int[16]; // the features with non-zero values
+		private int numNonZeros = 0;
+		
+		/**
+		 * Make room for numFeatures features
+		 * 
+		 * @param numFeatures
+		 */
+		void setNumFeatures(int numFeatures){
+			if( numFeatures > values.length ){
+				values = Arrays.copyOf(values, numFeatures);
+			}
+		}
+		
+		/**
+		 * Start a new example with every feature 0.0
+		 * 
+		 * @param index
+		 * @param label
+		 */
+		void clear(int index, double label){
+			for( int i = 0; i < numNonZeros; i++ ){
+				values[nonZeros[i]] = 0.0;
+			}
+			
+			numNonZeros = 0;
+			this.index = index;
+			this.label = label;
+		}
+		
+		/**
+		 * Set a feature that hasn't been set since the last clear
+		 * 
+		 * @param feature
+		 * @param value
+		 */
+		void setFeature(int feature, double value){
+			if( value == 0.0 ){
+				return;
+			}
+			
+			if( feature >= values.length ){
+				setNumFeatures(Math.max(feature+1, 2*values.length));
+			}
+			
+			if( numNonZeros == nonZeros.length ){
+				nonZeros = Arrays.copyOf(nonZeros, 2*numNonZeros);
+			}
+			
+			values[feature] = value;
+			nonZeros[numNonZeros++] = feature;
+		}
+		
+		/**
+		 * @return the position of the example in the data set, starting at 0
+		 */
+		public int getIndex(){
+			return index;
+		}
+		
+		public double getLabel(){
+			return label;
+		}
+		
+		/**
+		 * @param feature
+		 * @return the value of feature, 0.0 if the example doesn't have it
+		 */
+		public double getFeature(int feature){
+			return feature < values.length ? values[feature] : 0.0;
+		}
+		
+		/**
+		 * @return the number of features with non-zero values
+		 */
+		public int getNumNonZeros(){
+			return numNonZeros;
+		}
+		
+		/**
+		 * @param i between 0 and getNumNonZeros()-1
+		 * @return the i-th feature with a non-zero value, in the order they were read
+		 */
+		public int getNonZeroFeature(int i){
+			return nonZeros[i];
+		}
+		
+		/**
+		 * @return a copy of this row as an Example with only its non-zero features
+		 */
+		public Example toExample(){
+			Example e = new Example();
+			e.setLabel(label);
+			
+			for( int i = 0; i < numNonZeros; i++ ){
+				e.addFeature(nonZeros[i], values[nonZeros[i]]);
+			}
+			
+			return e;
+		}
+	}
+}
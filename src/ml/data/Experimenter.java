@@ -1,5 +1,4 @@
 package ml.data;
-import ml.classifiers.*;
 
 /**
  * Random Forest classifier experiments. 
@@ -9,64 +8,24 @@ import ml.classifiers.*;
  */
 public class Experimenter {
 	public static void main(String[] args) {
-		DataSetSplit splits;
-
+		// decision trees and bagged, feature bagged and extra trees forests
+		GridSearch grid = new GridSearch();
+		int[] depths = {1, 2, 3, 4, 5};
+		grid.addGrid(new int[] {GridSearch.TREE}, depths, new int[0], false, System.nanoTime());
+		grid.addGrid(new int[] {GridSearch.BAGGING, GridSearch.FEATURE_BAGGING, GridSearch.EXTRA_TREES},
+				depths, new int[] {10, 20, 30, 40, 50}, false, System.nanoTime());
+		
 		for (DataSet dataset : new DataSet[] {new DataSet("wines.train", DataSet.TEXTFILE), new DataSet("titanic-train.csv", DataSet.CSVFILE)}) {
-			System.out.println("num trees  depth  test acc  train acc  tb test acc  tb train acc  fb test acc  fb train acc  et test acc  et train acc");
-			for (int depth = 1; depth <= 5; depth++) {
-				DecisionTreeClassifier d = new DecisionTreeClassifier();
-				d.setDepthLimit(depth);
-				splits = dataset.split(0.8);
-				double[] accuracies = calcAccuracy(dataset, d, splits);
-				
-				for (int numTrees = 10; numTrees <= 50; numTrees += 10) {
-					EnsembleTreeClassifier etc = new EnsembleTreeClassifier();
-					etc.setDepthLimit(depth);
-					etc.setNumTrees(numTrees);
-
-					double[] tbAccuracies = calcAccuracy(dataset, etc, splits);
-					etc = new EnsembleTreeClassifier();
-					etc.setDepthLimit(depth);
-					etc.setNumTrees(numTrees);
-					etc.setFeatureBagging(true);
-					double[] fbAccuracies = calcAccuracy(dataset, etc, splits);
-					etc = new EnsembleTreeClassifier();
-					etc.setDepthLimit(depth);
-					etc.setNumTrees(numTrees);
-					etc.setExtraTrees(true);
-					double[] etAccuracies = calcAccuracy(dataset, etc, splits);
-					
-					System.out.format("%-11d%-7d%-10.4f%-11.4f%-13.4f%-14.4f%-13.4f%-14.4f%-13.4f%-14.4f%n", numTrees, depth, accuracies[0], accuracies[1], tbAccuracies[0], tbAccuracies[1], fbAccuracies[0], fbAccuracies[1], etAccuracies[0], etAccuracies[1]);
+			System.out.println("classifier        num trees  depth  test acc  train acc");
+			grid.run(dataset.split(0.8), new GridSearch.Listener() {
+				public void configurationDone(GridSearch.Result result) {
+					GridSearch.Configuration c = result.getConfiguration();
+					String kind = c.getKind() == GridSearch.TREE ? "tree" : c.getKind() == GridSearch.BAGGING ? "tb" :
+						c.getKind() == GridSearch.FEATURE_BAGGING ? "fb" : "et";
+					System.out.format("%-18s%-11d%-7d%-10.4f%-11.4f%n", kind, c.getNumTrees(), c.getDepth(), result.getTestAccuracy(), result.getTrainAccuracy());
 				}
-			}
+			});
 			System.out.println("-----------------------------");
 		}
 	}
-
-
-	/**
-	 * Splits a dataset, trains a classifier on the test data, and computes accuracies
-	 * on both the training and test data.
-	 * 
-	 * @param data dataset being evaluated
-	 * @param classifier classifier being used
-	 * @param depth depth limit for classifier 
-	 * @param split proportion of split for test/training data
-	 * @return array with two doubles, the test data accuracy and training data accuracy
-	 */
-	private static double[] calcAccuracy(DataSet data, Classifier classifier, DataSetSplit splits) {
-		classifier.train(splits.getTrain());
-		double correctTest = 0, totalTest = 0;
-		for (Example e : splits.getTest().getData()) {
-			if (classifier.classify(e) == e.getLabel()) correctTest++;
-			totalTest++;
-		}
-		double correctTrain = 0, totalTrain = 0;
-		for (Example e : splits.getTrain().getData()) {
-			if (classifier.classify(e) == e.getLabel()) correctTrain++;
-			totalTrain++;
-		}
-
-		return new double[] {correctTest / totalTest, correctTrain / totalTrain};
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,231 @@
+package ml.data;
+
+import java.util.Arrays;
+
+/**
+ * Quantized version of the feature columns of a data set.  Each feature is split
+ * into at most MAX_BINS bins by its values and every example is replaced by the
+ * bin it falls into, so that splits can be found by scanning per-bin counts.
+ * 
+ * Bin b of a feature holds the values v with threshold(b-1) < v <= threshold(b),
+ * so splitting after bin b is the same as splitting on value <= threshold(b).
+ * 
+ * @author dkauchak, Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class FeatureBins {
+	public static final int MAX_BINS = 256;
+	
+	// the one bin of a feature that's always zero, shared since sparse samples
+	// (e.g. hashed text) can have millions of them
+	private static final double[] ZERO_BIN = {0.0};
+	
+	private byte[][] bins; // bins[feature][example], read with & 0xFF, or null if only the thresholds are known
+	private double[][] thresholds; // thresholds[feature][bin], the largest value in each bin
+	
+	/**
+	 * Quantize the columns into at most maxBins bins per feature.  Features with
+	 * fewer distinct values than maxBins get one bin per value, the others
+	 * are split at (roughly) equal-frequency cut points.
+	 * 
+	 * @param columns the feature columns, indexed by feature index
+	 * @param maxBins the maximum number of bins per feature (at most MAX_BINS)
+	 */
+	public FeatureBins(double[][] columns, int maxBins){
+		if( maxBins < 1 || maxBins > MAX_BINS ){
+			throw new IllegalArgumentException("Number of bins must be between 1 and " + MAX_BINS + ": " + maxBins);
+		}
+		
+		bins = new byte[columns.length][];
+		thresholds = new double[columns.length][];
+		
+		for( int f = 0; f < columns.length; f++ ){
+			thresholds[f] = cutPoints(columns[f], maxBins);
+			bins[f] = new byte[columns[f].length];
+			
+			for( int i = 0; i < columns[f].length; i++ ){
+				bins[f][i] = (byte)getBin(f, columns[f][i]);
+			}
+		}
+	}
+	
+	/**
+	 * Cut the bins from a sample of the examples instead of all of them, e.g. when
+	 * the data is too big to hold in memory.  Only the thresholds are kept, so
+	 * getBinColumn isn't available and examples are binned with getBin.
+	 * 
+	 * @param sample the non-zero values of the sampled examples
+	 * @param maxBins the maximum number of bins per feature (at most MAX_BINS)
+	 */
+	public FeatureBins(SparseFeatures sample, int maxBins){
+		if( maxBins < 1 || maxBins > MAX_BINS ){
+			throw new IllegalArgumentException("Number of bins must be between 1 and " + MAX_BINS + ": " + maxBins);
+		}
+		
+		thresholds = new double[sample.getNumFeatures()][];
+		double[] values = sample.getPostingValues();
+		
+		for( int f = 0; f < thresholds.length; f++ ){
+			int start = sample.getPostingsStart(f);
+			int numNonZeros = sample.getPostingsStart(f+1) - start;
+			
+			if( numNonZeros == 0 ){
+				thresholds[f] = ZERO_BIN;
+				continue;
+			}
+			
+			// the zeros aren't in the sample's index, so add them as one more value
+			double[] sorted = Arrays.copyOfRange(values, start, start + numNonZeros + 1);
+			sorted[numNonZeros] = 0.0;
+			Arrays.sort(sorted);
+			int[] counts = new int[sorted.length];
+			int distinct = runLengths(sorted, counts);
+			int zero = Arrays.binarySearch(sorted, 0, distinct, 0.0);
+			counts[zero] += sample.size() - numNonZeros - 1;
+			
+			if( counts[zero] == 0 ){
+				// no zeros after all
+				System.arraycopy(sorted, zero+1, sorted, zero, distinct-zero-1);
+				System.arraycopy(counts, zero+1, counts, zero, distinct-zero-1);
+				distinct--;
+			}
+			
+			thresholds[f] = cutPoints(sorted, counts, distinct, sample.size(), maxBins);
+		}
+	}
+	
+	/**
+	 * Find the upper bound of each bin for a column
+	 * 
+	 * @param column
+	 * @param maxBins
+	 * @return the largest value in each bin, in increasing order
+	 */
+	private static double[] cutPoints(double[] column, int maxBins){
+		if( column.length == 0 ){
+			return new double[]{0.0};
+		}
+		
+		double[] sorted = column.clone();
+		Arrays.sort(sorted);
+		int[] counts = new int[sorted.length];
+		int distinct = runLengths(sorted, counts);
+		
+		return cutPoints(sorted, counts, distinct, sorted.length, maxBins);
+	}
+	
+	/**
+	 * Collapse the runs of equal values of a sorted array, in place
+	 * 
+	 * @param sorted sorted values, replaced by the distinct values
+	 * @param counts filled in with how many times each distinct value occurs
+	 * @return the number of distinct values
+	 */
+	private static int runLengths(double[] sorted, int[] counts){
+		int distinct = 0;
+		
+		for( int i = 0; i < sorted.length; i++ ){
+			if( i == 0 || sorted[i] != sorted[distinct-1] ){
+				sorted[distinct++] = sorted[i];
+			}
+			
+			counts[distinct-1]++;
+		}
+		
+		return distinct;
+	}
+	
+	/**
+	 * Find the upper bound of each bin from the distinct values of a feature
+	 * 
+	 * @param values the distinct values, in increasing order
+	 * @param counts how many examples have each value
+	 * @param distinct the number of distinct values
+	 * @param total the number of examples
+	 * @param maxBins
+	 * @return the largest value in each bin, in increasing order
+	 */
+	private static double[] cutPoints(double[] values, int[] counts, int distinct, int total, int maxBins){
+		double[] cuts = new double[Math.min(distinct, maxBins)];
+		int numCuts = 0;
+		
+		if( distinct <= maxBins ){
+			// one bin per value
+			System.arraycopy(values, 0, cuts, 0, distinct);
+			numCuts = distinct;
+		}else{
+			// close a bin at the end of each run of equal values once the bin
+			// has reached its share of the examples
+			double perBin = (double)total/maxBins;
+			int seen = 0;
+			
+			for( int i = 0; i < distinct && numCuts < maxBins-1; i++ ){
+				seen += counts[i];
+				
+				if( seen >= (numCuts+1)*perBin ){
+					cuts[numCuts++] = values[i];
+				}
+			}
+			
+			if( numCuts == 0 || cuts[numCuts-1] != values[distinct-1] ){
+				cuts[numCuts++] = values[distinct-1];
+			}
+		}
+		
+		return numCuts == cuts.length ? cuts : Arrays.copyOf(cuts, numCuts);
+	}
+	
+	/**
+	 * Get the bin that value would fall into for feature.  Values above the
+	 * largest threshold go in the last bin.
+	 * 
+	 * @param feature
+	 * @param value
+	 * @return the bin for value
+	 */
+	public int getBin(int feature, double value){
+		double[] cuts = thresholds[feature];
+		int bin = Arrays.binarySearch(cuts, value);
+		
+		if( bin < 0 ){
+			bin = Math.min(-bin-1, cuts.length-1);
+		}
+		
+		return bin;
+	}
+	
+	/**
+	 * Get the bins of all the examples for a feature.  The bytes are unsigned, so
+	 * they should be read with (bins[i] & 0xFF).
+	 * 
+	 * @param feature
+	 * @return the bin of each example, in example order, or null if the bins were
+	 * cut from a sample
+	 */
+	public byte[] getBinColumn(int feature){
+		return bins == null ? null : bins[feature];
+	}
+	
+	/**
+	 * @param feature
+	 * @return the number of bins used for feature
+	 */
+	public int getNumBins(int feature){
+		return thresholds[feature].length;
+	}
+	
+	/**
+	 * @param feature
+	 * @param bin
+	 * @return the largest value that falls into bin for feature
+	 */
+	public double getThreshold(int feature, int bin){
+		return thresholds[feature][bin];
+	}
+	
+	/**
+	 * @return the number of features that were binned
+	 */
+	public int getNumFeatures(){
+		return thresholds.length;
+	}
+}
@@ -0,0 +1,301 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns text into features with the hashing trick: each word (and, optionally,
+ * each run of up to n consecutive words) is hashed straight to one of 2^bits
+ * feature indices instead of being looked up in a vocabulary.  Memory doesn't
+ * grow with the number of distinct words, and since there's no shared state,
+ * any number of threads can vectorize text at the same time with the same
+ * hasher and get the same feature indices.
+ * 
+ * The hash is signed: one bit of it decides whether an occurrence adds 1 or -1
+ * to the feature, so words that collide tend to cancel out rather than pile up.
+ * 
+ * Words are split on whitespace and lowercased, and words without a letter
+ * a-z are skipped, the same as TextDataReader does without hashing.  The hasher
+ * can be given to TextDataReader (or DataSet/ParallelDataLoader) to read text
+ * files with it, or used as a DataPreprocessor to hash the feature names of a
+ * data set that's already loaded.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class FeatureHasher implements DataPreprocessor {
+	public static final int MAX_BITS = 30;
+	
+	// MurmurHash3 (x86, 32 bit) constants
+	private static final int C1 = 0xcc9e2d51;
+	private static final int C2 = 0x1b873593;
+	
+	private int bits;
+	private int mask;
+	private int maxN = 1;
+	
+	/**
+	 * @param bits the number of bits of the hash to keep, i.e. 2^bits features
+	 */
+	public FeatureHasher(int bits){
+		if( bits < 1 || bits > MAX_BITS ){
+			throw new IllegalArgumentException("Number of bits must be between 1 and " + MAX_BITS + ": " + bits);
+		}
+		
+		this.bits = bits;
+		this.mask = (1 << bits) - 1;
+	}
+	
+	/**
+	 * Also hash the runs of 2 to maxN consecutive words (by default only single
+	 * words are hashed)
+	 * 
+	 * @param maxN the longest n-gram
+	 */
+	public void setNGrams(int maxN){
+		if( maxN < 1 ){
+			throw new IllegalArgumentException("Longest n-gram must be at least 1: " + maxN);
+		}
+		
+		this.maxN = maxN;
+	}
+	
+	/**
+	 * @return the number of feature indices, 2^bits
+	 */
+	public int getNumFeatures(){
+		return mask+1;
+	}
+	
+	/**
+	 * @return the number of bits of the hash that are kept
+	 */
+	public int getBits(){
+		return bits;
+	}
+	
+	/**
+	 * Hash the words of text, from start on, into the features of example.  Each
+	 * occurrence adds 1 or -1 (by the sign of its hash) to the feature's value.
+	 * 
+	 * @param text
+	 * @param start where the words start in text
+	 * @param example
+	 */
+	public void addFeatures(CharSequence text, int start, Example example){
+		// the hashes of the last maxN words, as a ring
+		int[] previous = new int[maxN];
+		int numWords = 0;
+		int length = text.length();
+		int i = start;
+		
+		while( i < length ){
+			while( i < length && Character.isWhitespace(text.charAt(i)) ){
+				i++;
+			}
+			
+			int wordStart = i;
+			boolean hasLetter = false;
+			
+			while( i < length && !Character.isWhitespace(text.charAt(i)) ){
+				char c = Character.toLowerCase(text.charAt(i));
+				hasLetter |= c >= 'a' && c <= 'z';
+				i++;
+			}
+			
+			if( !hasLetter ){
+				continue;
+			}
+			
+			int hash = hashWord(text, wordStart, i);
+			previous[numWords % maxN] = hash;
+			numWords++;
+			add(example, hash);
+			
+			// the n-grams that end with this word
+			for( int n = 2; n <= maxN && n <= numWords; n++ ){
+				int h = n;
+				
+				for( int k = n; k >= 1; k-- ){
+					h = mixBlock(h, previous[(numWords-k) % maxN]);
+				}
+				
+				add(example, finish(h, 4*n));
+			}
+		}
+	}
+	
+	/**
+	 * Add one occurrence of a hashed feature to an example
+	 * 
+	 * @param example
+	 * @param hash
+	 */
+	private void add(Example example, int hash){
+		int feature = hash & mask;
+		example.setFeature(feature, example.getFeature(feature) + (hash < 0 ? -1.0 : 1.0));
+	}
+	
+	/**
+	 * @param word
+	 * @return the feature index word hashes to
+	 */
+	public int getFeature(String word){
+		return hashWord(word, 0, word.length()) & mask;
+	}
+	
+	/**
+	 * @param word
+	 * @return 1 or -1, what each occurrence of word adds to its feature
+	 */
+	public double getSign(String word){
+		return hashWord(word, 0, word.length()) < 0 ? -1.0 : 1.0;
+	}
+	
+	/**
+	 * Hash the lowercased characters of a word, two to a block
+	 * 
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @return the hash.  The top bit is the sign and the low bits the feature
+	 * index, which MurmurHash3 leaves independent of each other.
+	 */
+	private static int hashWord(CharSequence text, int start, int end){
+		int h = 0;
+		int i = start;
+		
+		for( ; i+1 < end; i += 2 ){
+			h = mixBlock(h, Character.toLowerCase(text.charAt(i)) | (Character.toLowerCase(text.charAt(i+1)) << 16));
+		}
+		
+		if( i < end ){
+			int k = Character.toLowerCase(text.charAt(i));
+			k *= C1;
+			k = Integer.rotateLeft(k, 15);
+			k *= C2;
+			h ^= k;
+		}
+		
+		return finish(h, 2*(end-start));
+	}
+	
+	/**
+	 * MurmurHash3's mixing of one 4-byte block into the hash
+	 * 
+	 * @param h
+	 * @param k
+	 * @return the new hash
+	 */
+	private static int mixBlock(int h, int k){
+		k *= C1;
+		k = Integer.rotateLeft(k, 15);
+		k *= C2;
+		h ^= k;
+		h = Integer.rotateLeft(h, 13);
+		return h*5 + 0xe6546b64;
+	}
+	
+	/**
+	 * MurmurHash3's finalization
+	 * 
+	 * @param h
+	 * @param length the number of bytes hashed
+	 * @return the final hash
+	 */
+	private static int finish(int h, int length){
+		h ^= length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	/**
+	 * @param feature
+	 * @return the name of a hashed feature
+	 */
+	public static String getFeatureName(int feature){
+		return "#" + feature;
+	}
+	
+	/**
+	 * Get the feature map for a set of hashed features.  Only the features that
+	 * occur are named, so the map never has more than 2^bits entries.
+	 * 
+	 * @param features the feature indices that occur
+	 * @return the mapping from feature index to its name (see getFeatureName)
+	 */
+	public static HashMap<Integer, String> getFeatureMap(BitSet features){
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int f = features.nextSetBit(0); f >= 0; f = features.nextSetBit(f+1) ){
+			featureMap.put(f, getFeatureName(f));
+		}
+		
+		return featureMap;
+	}
+	
+	/**
+	 * Hash the features of the training data by their names
+	 * 
+	 * @param train
+	 */
+	public void preprocessTrain(DataSet train){
+		hashFeatureNames(train);
+	}
+	
+	/**
+	 * Hash the features of the testing data by their names, into the same
+	 * features as the training data
+	 * 
+	 * @param test
+	 */
+	public void preprocessTest(DataSet test){
+		hashFeatureNames(test);
+	}
+	
+	/**
+	 * Replace the features of a data set with their hashes: each feature is
+	 * hashed by its name (like a word) and its value, times the sign of the
+	 * hash, is added to the hashed feature.  Only single names are hashed, since
+	 * the order of the words is gone by now.
+	 * 
+	 * @param data
+	 */
+	private void hashFeatureNames(DataSet data){
+		HashMap<Integer, String> names = data.getFeatureMap();
+		int numIndices = data.getNumFeatureIndices();
+		int[] hashes = new int[numIndices];
+		BitSet used = new BitSet();
+		
+		for( Map.Entry<Integer, String> name: names.entrySet() ){
+			if( name.getKey() < numIndices ){
+				hashes[name.getKey()] = hashWord(name.getValue(), 0, name.getValue().length());
+			}
+		}
+		
+		ArrayList<Example> examples = data.getData();
+		ArrayList<Example> hashed = new ArrayList<Example>(examples.size());
+		
+		for( Example e: examples ){
+			Example h = new Example();
+			h.setLabel(e.getLabel());
+			
+			for( int f: e.getFeatureSet() ){
+				if( f < numIndices && names.containsKey(f) ){
+					int feature = hashes[f] & mask;
+					h.setFeature(feature, h.getFeature(feature) + (hashes[f] < 0 ? -e.getFeature(f) : e.getFeature(f)));
+					used.set(feature);
+				}
+			}
+			
+			hashed.add(h);
+		}
+		
+		data.replaceExamples(getFeatureMap(used), getNumFeatures(), hashed);
+	}
+}
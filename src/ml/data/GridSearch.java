@@ -0,0 +1,326 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import ml.classifiers.Classifier;
+import ml.classifiers.ClassifierFactory;
+import ml.classifiers.DecisionTreeClassifier;
+import ml.classifiers.EnsembleTreeClassifier;
+
+/**
+ * Grid search over tree and forest hyperparameters.  Every configuration is
+ * trained on the same train/test split and the configurations run at the same
+ * time on a work-stealing pool.  The split's columns, class ids and feature bins
+ * are built once up front and shared, read-only, by all of the configurations.
+ * 
+ * Results are handed to a Listener as each configuration finishes, so long
+ * sweeps can be watched (or written out) as they go.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class GridSearch {
+	// kinds of classifier
+	public static final int TREE = 0; // a single DecisionTreeClassifier
+	public static final int BAGGING = 1; // a forest of bagged trees
+	public static final int FEATURE_BAGGING = 2; // bagged trees that only consider some features at each split
+	public static final int EXTRA_TREES = 3; // bagged trees with random splits
+	
+	private static final String[] KIND_NAMES = {"tree", "bagging", "feature bagging", "extra trees"};
+	
+	private ArrayList<Configuration> configurations = new ArrayList<Configuration>();
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Add every combination of the parameters to the grid.  numTrees is ignored
+	 * for TREE, which is only added once per depth.
+	 * 
+	 * @param kinds the kinds of classifier, e.g. TREE or BAGGING
+	 * @param depths depth limits
+	 * @param numTrees forest sizes
+	 * @param histogramSplits whether the trees split on thresholds (see setHistogramSplits)
+	 * @param seed the seed for every forest, so the results are reproducible
+	 */
+	public void addGrid(int[] kinds, int[] depths, int[] numTrees, boolean histogramSplits, long seed){
+		for( int kind: kinds ){
+			for( int depth: depths ){
+				if( kind == TREE ){
+					configurations.add(new Configuration(kind, depth, 1, histogramSplits, seed));
+				}else{
+					for( int n: numTrees ){
+						configurations.add(new Configuration(kind, depth, n, histogramSplits, seed));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add a single configuration to the grid
+	 * 
+	 * @param configuration
+	 */
+	public void add(Configuration configuration){
+		configurations.add(configuration);
+	}
+	
+	/**
+	 * @return the configurations in the grid, in the order they were added
+	 */
+	public List<Configuration> getConfigurations(){
+		return Collections.unmodifiableList(configurations);
+	}
+	
+	/**
+	 * Set how many configurations are run at the same time (by default, one per
+	 * processor).
+	 * 
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism){
+		if( parallelism < 1 ){
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Train every configuration on the training half of the split and measure
+	 * its accuracy on both halves.
+	 * 
+	 * @param split the data to train and test on
+	 * @param listener told about each result as soon as it's ready (may be null).
+	 * The calls are never made at the same time, but come from the pool's threads
+	 * and in no particular order.
+	 * @return the results, in the same order as the configurations
+	 */
+	public List<Result> run(final DataSetSplit split, final Listener listener){
+		final DataSet train = split.getTrain();
+		final DataSet test = split.getTest();
+		
+		// build everything the configurations share up front, since DataSet builds it
+		// lazily (sparse data is read through its non-zero values, not columns)
+		prepare(train);
+		train.getClassIds();
+		prepare(test);
+		test.getLabelColumn();
+		
+		// sparse data isn't binned (see DecisionTreeClassifier.setHistogramSplits)
+		for( Configuration configuration: configurations ){
+			if( configuration.histogramSplits && !train.isSparse() ){
+				train.getFeatureBins();
+				break;
+			}
+		}
+		
+		final Result[] results = new Result[configurations.size()];
+		ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		
+		for( int i = 0; i < configurations.size(); i++ ){
+			final int c = i;
+			
+			tasks.add(new RecursiveAction() {
+				protected void compute() {
+					Result result = evaluate(configurations.get(c), train, test);
+					results[c] = result;
+					
+					if( listener != null ){
+						synchronized( listener ){
+							listener.configurationDone(result);
+						}
+					}
+				}
+			});
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		
+		try{
+			for( ForkJoinTask<?> task: tasks ){
+				pool.execute(task);
+			}
+			
+			for( ForkJoinTask<?> task: tasks ){
+				task.join();
+			}
+		}finally{
+			pool.shutdown();
+		}
+		
+		ArrayList<Result> resultList = new ArrayList<Result>();
+		Collections.addAll(resultList, results);
+		return resultList;
+	}
+	
+	/**
+	 * Build the view of a data set that the classifiers will read it through
+	 * 
+	 * @param data
+	 */
+	static void prepare(DataSet data){
+		if( data.isSparse() ){
+			data.getSparseFeatures();
+		}else{
+			data.getColumns();
+		}
+	}
+	
+	/**
+	 * Train and test one configuration
+	 * 
+	 * @param configuration
+	 * @param train
+	 * @param test
+	 * @return the result
+	 */
+	private static Result evaluate(Configuration configuration, DataSet train, DataSet test){
+		Classifier classifier = configuration.newClassifier();
+		long start = System.nanoTime();
+		classifier.train(train);
+		long trainingNanos = System.nanoTime()-start;
+		
+		return new Result(configuration, accuracy(classifier, test), accuracy(classifier, train), trainingNanos);
+	}
+	
+	/**
+	 * Computes the accuracy of a trained classifier on a dataset.
+	 * 
+	 * @param classifier trained classifier
+	 * @param data dataset being evaluated
+	 * @return the fraction of examples classified correctly
+	 */
+	public static double accuracy(Classifier classifier, DataSet data){
+		double[] predictions = classifier.classifyBatch(data);
+		double[] labels = data.getLabelColumn();
+		double correct = 0;
+		
+		for( int i = 0; i < predictions.length; i++ ){
+			if( predictions[i] == labels[i] ){
+				correct++;
+			}
+		}
+		
+		return correct/predictions.length;
+	}
+	
+	/**
+	 * One point in the grid
+	 */
+	public static class Configuration implements ClassifierFactory {
+		private int kind;
+		private int depth;
+		private int numTrees;
+		private boolean histogramSplits;
+		private long seed;
+		
+		/**
+		 * @param kind TREE, BAGGING, FEATURE_BAGGING or EXTRA_TREES
+		 * @param depth the depth limit
+		 * @param numTrees the number of trees (ignored for TREE)
+		 * @param histogramSplits whether the trees split on thresholds
+		 * @param seed the seed for forests
+		 */
+		public Configuration(int kind, int depth, int numTrees, boolean histogramSplits, long seed){
+			if( kind < TREE || kind > EXTRA_TREES ){
+				throw new IllegalArgumentException("Unknown kind of classifier: " + kind);
+			}
+			
+			this.kind = kind;
+			this.depth = depth;
+			this.numTrees = numTrees;
+			this.histogramSplits = histogramSplits;
+			this.seed = seed;
+		}
+		
+		/**
+		 * @return a new, untrained classifier with this configuration.  Forests train
+		 * their trees one at a time, since the grid already keeps every thread busy.
+		 */
+		public Classifier newClassifier(){
+			if( kind == TREE ){
+				DecisionTreeClassifier tree = new DecisionTreeClassifier();
+				tree.setDepthLimit(depth);
+				tree.setHistogramSplits(histogramSplits);
+				return tree;
+			}
+			
+			EnsembleTreeClassifier forest = new EnsembleTreeClassifier();
+			forest.setDepthLimit(depth);
+			forest.setNumTrees(numTrees);
+			forest.setFeatureBagging(kind == FEATURE_BAGGING);
+			forest.setExtraTrees(kind == EXTRA_TREES);
+			forest.setHistogramSplits(histogramSplits);
+			forest.setSeed(seed);
+			return forest;
+		}
+		
+		public int getKind(){
+			return kind;
+		}
+		
+		public int getDepth(){
+			return depth;
+		}
+		
+		public int getNumTrees(){
+			return numTrees;
+		}
+		
+		public boolean isHistogramSplits(){
+			return histogramSplits;
+		}
+		
+		public String toString(){
+			return KIND_NAMES[kind] + " depth=" + depth + (kind == TREE ? "" : " trees=" + numTrees) +
+					(histogramSplits ? " histogram" : "");
+		}
+	}
+	
+	/**
+	 * The accuracies of one configuration
+	 */
+	public static class Result {
+		private Configuration configuration;
+		private double testAccuracy;
+		private double trainAccuracy;
+		private long trainingNanos;
+		
+		public Result(Configuration configuration, double testAccuracy, double trainAccuracy, long trainingNanos){
+			this.configuration = configuration;
+			this.testAccuracy = testAccuracy;
+			this.trainAccuracy = trainAccuracy;
+			this.trainingNanos = trainingNanos;
+		}
+		
+		public Configuration getConfiguration(){
+			return configuration;
+		}
+		
+		public double getTestAccuracy(){
+			return testAccuracy;
+		}
+		
+		public double getTrainAccuracy(){
+			return trainAccuracy;
+		}
+		
+		/**
+		 * @return how long training took, in nanoseconds
+		 */
+		public long getTrainingNanos(){
+			return trainingNanos;
+		}
+	}
+	
+	/**
+	 * Receives the results of a grid search as they finish
+	 */
+	public interface Listener {
+		public void configurationDone(Result result);
+	}
+}
@@ -0,0 +1,527 @@
+package ml.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A class for reading CSV files straight into column storage.
+ * 
+ * The file is memory-mapped and the numbers are parsed directly from the bytes,
+ * so no Strings or Examples are created for the data lines.  Like the DataSet
+ * constructor, any lines at the beginning that start with # are ignored, the
+ * first line after them holds the headers and the last column is the label.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class MappedCSVReader {
+	// how much of the file to map at once; lines can't be longer than this
+	private static final long WINDOW_SIZE = 1L << 30;
+	
+	// exact powers of ten, for parsing numbers without rounding twice
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	// more significant digits than this might not fit exactly in a double
+	private static final int MAX_EXACT_DIGITS = 15;
+	
+	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+	private int labelIndex = -1; // the column the label is in, -1 until the headers are read
+	
+	// the parsed data, grown as needed
+	private double[][] columns;
+	private double[] labelColumn;
+	private int numRows = 0;
+	
+	private long lineNumber = 0;
+	
+	// where the data lines start, i.e. just past the header line
+	private long dataStart = -1;
+	
+	// gets the values of the data lines, which are stored in the columns unless
+	// they're being scanned
+	private RowVisitor visitor = new RowVisitor(){
+		public void startRow(int row){
+			ensureCapacity(row+1);
+		}
+		
+		public void value(int column, double value){
+			if( column == labelIndex ){
+				labelColumn[numRows] = value;
+			}else{
+				columns[column][numRows] = value;
+			}
+		}
+		
+		public void endRow(){
+		}
+	};
+	
+	/**
+	 * Read all of the data in the file
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public MappedCSVReader(String filename) throws IOException{
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		
+		try{
+			read(channel, 0, channel.size());
+		}finally{
+			channel.close();
+		}
+		
+		if( labelIndex == -1 ){
+			throw new IOException("No header line found in " + filename);
+		}
+		
+		trim();
+	}
+	
+	/**
+	 * Read just the headers of the file.  Use getDataStart() to find out where
+	 * the data begins.
+	 * 
+	 * @param channel
+	 * @throws IOException
+	 */
+	MappedCSVReader(FileChannel channel) throws IOException{
+		long size = channel.size();
+		long position = 0;
+		
+		// read a line at a time until the headers have been found
+		while( labelIndex == -1 && position < size ){
+			long length = Math.min(WINDOW_SIZE, size-position);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int lineEnd = indexOf(buffer, (byte)'\n', 0, (int)length);
+			
+			if( lineEnd == -1 ){
+				if( position+length < size ){
+					throw new IOException("Line " + (lineNumber+1) + " is longer than " + WINDOW_SIZE + " bytes");
+				}
+				
+				lineEnd = (int)length;
+			}
+			
+			parseLine(buffer, 0, lineEnd);
+			position += Math.min(lineEnd+1, length);
+		}
+		
+		if( labelIndex == -1 ){
+			throw new IOException("No header line found");
+		}
+		
+		dataStart = position;
+	}
+	
+	/**
+	 * Read the data lines between start and end of a file whose headers have
+	 * already been read by headers.  start must be the beginning of a line.
+	 * 
+	 * @param channel
+	 * @param start
+	 * @param end
+	 * @param headers a reader that has read the headers of the file
+	 * @throws IOException
+	 */
+	MappedCSVReader(FileChannel channel, long start, long end, MappedCSVReader headers) throws IOException{
+		featureMap = headers.featureMap;
+		labelIndex = headers.labelIndex;
+		columns = new double[labelIndex][16];
+		labelColumn = new double[16];
+		
+		read(channel, start, end);
+		trim();
+	}
+	
+	/**
+	 * Parse the data lines of a file whose headers this reader has read (see
+	 * MappedCSVReader(FileChannel)), handing each row to a visitor instead of
+	 * storing it.  This is how DataSetStream reads CSV files.
+	 * 
+	 * @param channel
+	 * @param visitor
+	 * @throws IOException
+	 */
+	void scan(FileChannel channel, RowVisitor visitor) throws IOException{
+		this.visitor = visitor;
+		numRows = 0;
+		read(channel, dataStart, channel.size());
+	}
+	
+	/**
+	 * Read the lines between start and end of the file, which must begin at the
+	 * beginning of a line.  The region is mapped a window at a time.
+	 * 
+	 * @param channel
+	 * @param start
+	 * @param end
+	 * @throws IOException
+	 */
+	private void read(FileChannel channel, long start, long end) throws IOException{
+		long position = start;
+		
+		while( position < end ){
+			long length = Math.min(WINDOW_SIZE, end-position);
+			boolean lastWindow = position+length == end;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int lineStart = 0;
+			
+			while( lineStart < length ){
+				int lineEnd = indexOf(buffer, (byte)'\n', lineStart, (int)length);
+				
+				if( lineEnd == -1 ){
+					if( !lastWindow ){
+						// the line continues past the window, so map again from its start
+						break;
+					}
+					
+					lineEnd = (int)length;
+				}
+				
+				parseLine(buffer, lineStart, lineEnd);
+				lineStart = lineEnd+1;
+			}
+			
+			if( lineStart == 0 ){
+				throw new IOException("Line " + (lineNumber+1) + " is longer than " + WINDOW_SIZE + " bytes");
+			}
+			
+			position += Math.min(lineStart, length);
+		}
+	}
+	
+	/**
+	 * Parse one line, either the headers or a row of data.
+	 * 
+	 * @param buffer
+	 * @param start the first byte of the line
+	 * @param end the end of the line (the position of the newline)
+	 * @throws IOException
+	 */
+	private void parseLine(ByteBuffer buffer, int start, int end) throws IOException{
+		lineNumber++;
+		
+		if( end > start && buffer.get(end-1) == '\r' ){
+			end--;
+		}
+		
+		if( isBlank(buffer, start, end) ){
+			return;
+		}
+		
+		if( labelIndex == -1 ){
+			// ignore any lines at the beginning that start with #
+			if( buffer.get(start) != '#' ){
+				parseHeaders(buffer, start, end);
+			}
+			
+			return;
+		}
+		
+		visitor.startRow(numRows);
+		int fieldStart = start;
+		
+		for( int i = 0; i <= labelIndex; i++ ){
+			if( fieldStart > end ){
+				throw new IOException("Line " + lineNumber + " has " + i + " columns, expected " + (labelIndex+1));
+			}
+			
+			int fieldEnd = indexOf(buffer, (byte)',', fieldStart, end);
+			
+			if( fieldEnd == -1 ){
+				fieldEnd = end;
+			}
+			
+			double value;
+			
+			try{
+				value = parseDouble(buffer, fieldStart, fieldEnd);
+			}catch(NumberFormatException e){
+				throw new IOException("Bad number in column " + (i+1) + " of line " + lineNumber, e);
+			}
+			
+			visitor.value(i, value);
+			fieldStart = fieldEnd+1;
+		}
+		
+		visitor.endRow();
+		numRows++;
+	}
+	
+	/**
+	 * Parse the header line and set up the columns
+	 * 
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 */
+	private void parseHeaders(ByteBuffer buffer, int start, int end){
+		byte[] bytes = new byte[end-start];
+		
+		for( int i = 0; i < bytes.length; i++ ){
+			bytes[i] = buffer.get(start+i);
+		}
+		
+		String[] headers = new String(bytes, Charset.defaultCharset()).split(",");
+		labelIndex = headers.length-1;
+		int featureIndex = 0;
+		
+		for( int i = 0; i < headers.length; i++ ){
+			if( i != labelIndex ){
+				featureMap.put(featureIndex, headers[i]);
+				featureIndex++;
+			}
+		}
+		
+		columns = new double[labelIndex][16];
+		labelColumn = new double[16];
+	}
+	
+	/**
+	 * Make sure there's room for at least rows rows
+	 * 
+	 * @param rows
+	 */
+	private void ensureCapacity(int rows){
+		if( rows > labelColumn.length ){
+			int capacity = Math.max(rows, labelColumn.length*2);
+			
+			for( int f = 0; f < columns.length; f++ ){
+				columns[f] = Arrays.copyOf(columns[f], capacity);
+			}
+			
+			labelColumn = Arrays.copyOf(labelColumn, capacity);
+		}
+	}
+	
+	/**
+	 * Cut the columns down to the number of rows actually read
+	 */
+	private void trim(){
+		if( labelColumn.length != numRows ){
+			for( int f = 0; f < columns.length; f++ ){
+				columns[f] = Arrays.copyOf(columns[f], numRows);
+			}
+			
+			labelColumn = Arrays.copyOf(labelColumn, numRows);
+		}
+	}
+	
+	/**
+	 * @param buffer
+	 * @param b the byte to look for
+	 * @param start
+	 * @param end
+	 * @return the position of the first b in [start, end), or -1 if there isn't one
+	 */
+	static int indexOf(ByteBuffer buffer, byte b, int start, int end){
+		for( int i = start; i < end; i++ ){
+			if( buffer.get(i) == b ){
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * @param b
+	 * @return whether b is a space or tab
+	 */
+	private static boolean isSpace(byte b){
+		return b == ' ' || b == '\t';
+	}
+	
+	/**
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return whether [start, end) is only spaces and tabs
+	 */
+	private static boolean isBlank(ByteBuffer buffer, int start, int end){
+		for( int i = start; i < end; i++ ){
+			if( !isSpace(buffer.get(i)) ){
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Parse a number directly from bytes, giving the same result as Double.parseDouble.
+	 * Plain decimal numbers with up to 15 significant digits (which covers pretty much
+	 * all data files) are parsed without allocating anything: the digits are read into
+	 * a long and scaled by an exact power of ten, which rounds only once.  Anything else
+	 * falls back to Double.parseDouble.
+	 * 
+	 * @param buffer
+	 * @param start the first byte of the number
+	 * @param end the end of the number
+	 * @return the number
+	 * @throws NumberFormatException if the bytes aren't a number
+	 */
+	static double parseDouble(ByteBuffer buffer, int start, int end){
+		while( start < end && isSpace(buffer.get(start)) ){
+			start++;
+		}
+		
+		while( end > start && isSpace(buffer.get(end-1)) ){
+			end--;
+		}
+		
+		int i = start;
+		boolean negative = false;
+		
+		if( i < end && (buffer.get(i) == '-' || buffer.get(i) == '+') ){
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0; // significant digits in the mantissa
+		int exponent = 0;
+		boolean sawDigit = false;
+		boolean exact = true;
+		boolean fraction = false;
+		
+		for( ; i < end; i++ ){
+			byte b = buffer.get(i);
+			
+			if( b >= '0' && b <= '9' ){
+				sawDigit = true;
+				
+				if( mantissa > 0 || b != '0' ){
+					digits++;
+				}
+				
+				if( digits > MAX_EXACT_DIGITS ){
+					exact = false;
+				}else{
+					mantissa = mantissa*10 + (b-'0');
+					
+					if( fraction ){
+						exponent--;
+					}
+				}
+			}else if( b == '.' && !fraction ){
+				fraction = true;
+			}else{
+				break;
+			}
+		}
+		
+		if( i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E') && sawDigit ){
+			i++;
+			boolean negativeExponent = false;
+			
+			if( i < end && (buffer.get(i) == '-' || buffer.get(i) == '+') ){
+				negativeExponent = buffer.get(i) == '-';
+				i++;
+			}
+			
+			int exponentStart = i;
+			int value = 0;
+			
+			for( ; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++ ){
+				// anything this big is out of range for the fast path anyway
+				value = Math.min(value*10 + (buffer.get(i)-'0'), 10000);
+			}
+			
+			if( i == exponentStart ){
+				exact = false;
+			}
+			
+			exponent += negativeExponent ? -value : value;
+		}
+		
+		if( !exact || !sawDigit || i != end || exponent < -22 || exponent > 22 ){
+			return slowParseDouble(buffer, start, end);
+		}
+		
+		double value = exponent >= 0 ? mantissa*POWERS_OF_TEN[exponent] : mantissa/POWERS_OF_TEN[-exponent];
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Parse a number with Double.parseDouble
+	 * 
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return the number
+	 */
+	private static double slowParseDouble(ByteBuffer buffer, int start, int end){
+		char[] chars = new char[end-start];
+		
+		for( int i = 0; i < chars.length; i++ ){
+			chars[i] = (char)(buffer.get(start+i) & 0xFF);
+		}
+		
+		return Double.parseDouble(new String(chars));
+	}
+	
+	/**
+	 * Receives the values of the data lines as they're parsed.  The label is
+	 * the last column, so the feature indices are the other column numbers.
+	 */
+	interface RowVisitor {
+		/**
+		 * @param row the number of the row, counting only the data lines
+		 */
+		public void startRow(int row);
+		
+		/**
+		 * @param column the column of the value, starting at 0
+		 * @param value
+		 */
+		public void value(int column, double value);
+		
+		public void endRow();
+	}
+	
+	/**
+	 * @return the position in the file just past the header line
+	 */
+	long getDataStart(){
+		return dataStart;
+	}
+	
+	/**
+	 * @return the number of rows read
+	 */
+	public int size(){
+		return numRows;
+	}
+	
+	/**
+	 * @return the mapping from feature indices to the header names
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		return featureMap;
+	}
+	
+	/**
+	 * @return the feature values, indexed by feature index then row
+	 */
+	public double[][] getColumns(){
+		return columns;
+	}
+	
+	/**
+	 * @return the label of each row
+	 */
+	public double[] getLabelColumn(){
+		return labelColumn;
+	}
+}
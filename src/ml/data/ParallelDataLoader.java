@@ -0,0 +1,430 @@
+package ml.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads CSV and text files using several threads.  The file is cut into byte
+ * ranges that start and end on line boundaries, each range is parsed on its own
+ * thread and the pieces are put back together in the original order.
+ * 
+ * CSV ranges are parsed by MappedCSVReader straight into columns.  Text ranges are
+ * parsed by TextDataReader, each with its own vocabulary, and the vocabularies are
+ * merged at the end so that words get the same feature indices they would have
+ * gotten from reading the file on one thread.  With a FeatureHasher there are no
+ * vocabularies to merge, since every range hashes a word to the same feature.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class ParallelDataLoader {
+	// ranges per thread, so that a slow range doesn't hold everything up
+	private static final int RANGES_PER_THREAD = 4;
+	
+	// don't bother splitting up less than this many bytes
+	private static final long MIN_RANGE_SIZE = 1 << 20;
+	
+	// ranges get mapped in one piece, so they can't be bigger than this
+	private static final long MAX_RANGE_SIZE = 1 << 30;
+	
+	private HashMap<Integer, String> featureMap;
+	
+	// CSV files
+	private double[][] columns;
+	private double[] labelColumn;
+	
+	// text files
+	private ArrayList<Example> examples;
+	private FeatureHasher hasher;
+	
+	/**
+	 * Load a file
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType what type of file, DataSet.CSVFILE or DataSet.TEXTFILE
+	 * @param numThreads the number of threads to parse with
+	 * @throws IOException
+	 */
+	public ParallelDataLoader(String filename, int fileType, int numThreads) throws IOException{
+		this(filename, fileType, null, numThreads);
+	}
+	
+	/**
+	 * Load a text file, hashing the words into features
+	 * 
+	 * @param filename the location of the text file
+	 * @param hasher
+	 * @param numThreads the number of threads to parse with
+	 * @throws IOException
+	 */
+	public ParallelDataLoader(String filename, FeatureHasher hasher, int numThreads) throws IOException{
+		this(filename, DataSet.TEXTFILE, hasher, numThreads);
+	}
+	
+	/**
+	 * @param filename the location of the file
+	 * @param fileType what type of file, DataSet.CSVFILE or DataSet.TEXTFILE
+	 * @param hasher hashes the words of a text file into features (may be null)
+	 * @param numThreads the number of threads to parse with
+	 * @throws IOException
+	 */
+	private ParallelDataLoader(String filename, int fileType, FeatureHasher hasher, int numThreads) throws IOException{
+		this.hasher = hasher;
+		
+		if( numThreads < 1 ){
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+		}
+		
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		ExecutorService pool = new ForkJoinPool(numThreads);
+		
+		try{
+			if( fileType == DataSet.CSVFILE ){
+				loadCSV(channel, pool, numThreads);
+			}else if( fileType == DataSet.TEXTFILE ){
+				loadText(channel, pool, numThreads);
+			}else{
+				throw new IllegalArgumentException("Unknown file type: " + fileType);
+			}
+		}finally{
+			pool.shutdown();
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Parse a CSV file into columns
+	 * 
+	 * @param channel
+	 * @param pool
+	 * @param numThreads
+	 * @throws IOException
+	 */
+	private void loadCSV(final FileChannel channel, ExecutorService pool, int numThreads) throws IOException{
+		final MappedCSVReader headers = new MappedCSVReader(channel);
+		long[] boundaries = lineBoundaries(channel, headers.getDataStart(), numThreads);
+		ArrayList<Callable<MappedCSVReader>> tasks = new ArrayList<Callable<MappedCSVReader>>();
+		
+		for( int i = 0; i+1 < boundaries.length; i++ ){
+			final long start = boundaries[i];
+			final long end = boundaries[i+1];
+			
+			tasks.add(new Callable<MappedCSVReader>(){
+				public MappedCSVReader call() throws IOException{
+					return new MappedCSVReader(channel, start, end, headers);
+				}
+			});
+		}
+		
+		List<MappedCSVReader> ranges = runAll(pool, tasks);
+		
+		// stitch the ranges back together in order
+		int numRows = 0;
+		
+		for( MappedCSVReader range: ranges ){
+			numRows += range.size();
+		}
+		
+		featureMap = headers.getFeatureMap();
+		columns = new double[featureMap.size()][numRows];
+		labelColumn = new double[numRows];
+		int row = 0;
+		
+		for( MappedCSVReader range: ranges ){
+			for( int f = 0; f < columns.length; f++ ){
+				System.arraycopy(range.getColumns()[f], 0, columns[f], row, range.size());
+			}
+			
+			System.arraycopy(range.getLabelColumn(), 0, labelColumn, row, range.size());
+			row += range.size();
+		}
+	}
+	
+	/**
+	 * Parse a text file into examples
+	 * 
+	 * @param channel
+	 * @param pool
+	 * @param numThreads
+	 * @throws IOException
+	 */
+	private void loadText(final FileChannel channel, ExecutorService pool, int numThreads) throws IOException{
+		long[] boundaries = lineBoundaries(channel, 0, numThreads);
+		ArrayList<Callable<TextRange>> tasks = new ArrayList<Callable<TextRange>>();
+		
+		for( int i = 0; i+1 < boundaries.length; i++ ){
+			final long start = boundaries[i];
+			final long end = boundaries[i+1];
+			
+			tasks.add(new Callable<TextRange>(){
+				public TextRange call() throws IOException{
+					return new TextRange(channel, start, end, hasher);
+				}
+			});
+		}
+		
+		final List<TextRange> ranges = runAll(pool, tasks);
+		examples = new ArrayList<Example>();
+		
+		if( hasher != null ){
+			featureMap = new HashMap<Integer, String>();
+			
+			for( TextRange range: ranges ){
+				featureMap.putAll(range.reader.getFeatureMap());
+				examples.addAll(range.examples);
+			}
+			
+			return;
+		}
+		
+		// merge the vocabularies in file order.  Each range numbered its words in the
+		// order it first saw them, so giving the new words of each range the next
+		// global indices in that order reproduces a single-threaded read.
+		HashMap<String, Integer> wordToFeature = new HashMap<String, Integer>();
+		featureMap = new HashMap<Integer, String>();
+		
+		for( TextRange range: ranges ){
+			HashMap<Integer, String> local = range.reader.getFeatureMap();
+			range.localToGlobal = new int[local.size()];
+			
+			for( int localFeature = 0; localFeature < local.size(); localFeature++ ){
+				String word = local.get(localFeature);
+				Integer globalFeature = wordToFeature.get(word);
+				
+				if( globalFeature == null ){
+					globalFeature = wordToFeature.size();
+					wordToFeature.put(word, globalFeature);
+					featureMap.put(globalFeature, word);
+				}
+				
+				range.localToGlobal[localFeature] = globalFeature;
+			}
+		}
+		
+		// renumber the features of each range's examples, again in parallel
+		ArrayList<Callable<Void>> renumber = new ArrayList<Callable<Void>>();
+		
+		for( final TextRange range: ranges ){
+			renumber.add(new Callable<Void>(){
+				public Void call(){
+					range.renumber();
+					return null;
+				}
+			});
+		}
+		
+		runAll(pool, renumber);
+		
+		for( TextRange range: ranges ){
+			examples.addAll(range.examples);
+		}
+	}
+	
+	/**
+	 * Cut [start, end of file) into byte ranges that begin at the start of a line
+	 * 
+	 * @param channel
+	 * @param start where the first range starts
+	 * @param numThreads
+	 * @return the boundaries of the ranges, starting with start and ending with the file size
+	 * @throws IOException
+	 */
+	private static long[] lineBoundaries(FileChannel channel, long start, int numThreads) throws IOException{
+		long size = channel.size();
+		long numRanges = Math.max(1, Math.min((long)numThreads*RANGES_PER_THREAD, (size-start)/MIN_RANGE_SIZE));
+		numRanges = Math.max(numRanges, (size-start+MAX_RANGE_SIZE-1)/MAX_RANGE_SIZE);
+		ArrayList<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(start);
+		
+		for( int i = 1; i < numRanges; i++ ){
+			long boundary = nextLineStart(channel, start + (size-start)*i/numRanges);
+			
+			if( boundary > boundaries.get(boundaries.size()-1) && boundary < size ){
+				boundaries.add(boundary);
+			}
+		}
+		
+		boundaries.add(size);
+		long[] result = new long[boundaries.size()];
+		
+		for( int i = 0; i < result.length; i++ ){
+			result[i] = boundaries.get(i);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @param channel
+	 * @param position
+	 * @return the position of the first line that starts at or after position
+	 * @throws IOException
+	 */
+	private static long nextLineStart(FileChannel channel, long position) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		
+		// a line starts at position if the byte before it is a newline
+		long current = position-1;
+		
+		while( true ){
+			buffer.clear();
+			int read = channel.read(buffer, current);
+			
+			if( read <= 0 ){
+				return channel.size();
+			}
+			
+			for( int i = 0; i < read; i++ ){
+				if( buffer.get(i) == '\n' ){
+					return current+i+1;
+				}
+			}
+			
+			current += read;
+		}
+	}
+	
+	/**
+	 * Run the tasks on the pool and wait for all of them
+	 * 
+	 * @param pool
+	 * @param tasks
+	 * @return the results, in the same order as the tasks
+	 * @throws IOException if any of the tasks failed
+	 */
+	private static <T> List<T> runAll(ExecutorService pool, List<Callable<T>> tasks) throws IOException{
+		ArrayList<T> results = new ArrayList<T>();
+		
+		try{
+			for( Future<T> result: pool.invokeAll(tasks) ){
+				results.add(result.get());
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading", e);
+		}catch(ExecutionException e){
+			if( e.getCause() instanceof IOException ){
+				throw (IOException)e.getCause();
+			}
+			
+			throw new IOException("Error while loading", e.getCause());
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * @return the mapping from feature indices to feature names
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		return featureMap;
+	}
+	
+	/**
+	 * @return the feature columns of a CSV file
+	 */
+	public double[][] getColumns(){
+		return columns;
+	}
+	
+	/**
+	 * @return the labels of a CSV file
+	 */
+	public double[] getLabelColumn(){
+		return labelColumn;
+	}
+	
+	/**
+	 * @return the examples of a text file
+	 */
+	public ArrayList<Example> getExamples(){
+		return examples;
+	}
+	
+	/**
+	 * The examples read from one byte range of a text file, with their features
+	 * numbered by the range's own vocabulary until renumber() is called.
+	 */
+	private static class TextRange{
+		private TextDataReader reader;
+		private ArrayList<Example> examples = new ArrayList<Example>();
+		private int[] localToGlobal;
+		
+		public TextRange(FileChannel channel, long start, long end, FeatureHasher hasher) throws IOException{
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end-start);
+			reader = new TextDataReader(new BufferedReader(new InputStreamReader(new BufferInputStream(buffer))), hasher);
+			
+			while( reader.hasNext() ){
+				examples.add(reader.next());
+			}
+		}
+		
+		/**
+		 * Switch the examples over to the global feature indices
+		 */
+		public void renumber(){
+			boolean same = true;
+			
+			for( int i = 0; i < localToGlobal.length && same; i++ ){
+				same = localToGlobal[i] == i;
+			}
+			
+			if( same ){
+				return;
+			}
+			
+			for( int i = 0; i < examples.size(); i++ ){
+				Example local = examples.get(i);
+				Example global = new Example();
+				global.setLabel(local.getLabel());
+				
+				for( int feature: local.getFeatureSet() ){
+					global.addFeature(localToGlobal[feature], local.getFeature(feature));
+				}
+				
+				examples.set(i, global);
+			}
+		}
+	}
+	
+	/**
+	 * An InputStream over a ByteBuffer
+	 */
+	private static class BufferInputStream extends InputStream{
+		private ByteBuffer buffer;
+		
+		public BufferInputStream(ByteBuffer buffer){
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read(){
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length){
+			if( !buffer.hasRemaining() ){
+				return -1;
+			}
+			
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The non-zero features of a data set, indexed both ways: an inverted index
+ * from each feature to the examples that have a non-zero value for it (its
+ * postings) and, for each example, the features it has a non-zero value for.
+ * For sparse data (e.g. text) this takes space proportional to the number of
+ * non-zero values instead of examples times features, like the columns do.
+ * 
+ * Both indices are stored as flat int arrays: the postings of feature f are
+ * getPostings()[getPostingsStart(f)] to getPostings()[getPostingsStart(f+1)-1], in
+ * increasing example order, and similarly for the features of an example.  The
+ * values themselves are kept in parallel arrays (getPostingValues() and
+ * getRowValues()).
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class SparseFeatures {
+	private int numExamples;
+	private int numFeatures;
+	
+	private int[] postingsStart; // numFeatures+1 offsets into postings
+	private int[] postings;
+	private double[] postingValues;
+	private int[] rowStart; // numExamples+1 offsets into rowFeatures
+	private int[] rowFeatures;
+	private double[] rowValues;
+	
+	/**
+	 * Index the non-zero features of examples.  Features at or above
+	 * numFeatures are left out.
+	 * 
+	 * @param data the examples
+	 * @param numFeatures the number of feature indices
+	 */
+	public SparseFeatures(ArrayList<Example> data, int numFeatures){
+		this.numExamples = data.size();
+		this.numFeatures = numFeatures;
+		rowStart = new int[numExamples+1];
+		int[] counts = new int[numFeatures];
+		
+		for( int i = 0; i < numExamples; i++ ){
+			Example e = data.get(i);
+			int numNonZero = 0;
+			
+			for( int f: e.getFeatureSet() ){
+				if( f < numFeatures && e.getFeature(f) != 0.0 ){
+					counts[f]++;
+					numNonZero++;
+				}
+			}
+			
+			rowStart[i+1] = rowStart[i] + numNonZero;
+		}
+		
+		initializePostings(counts);
+		int[] next = postingsStart.clone();
+		
+		for( int i = 0; i < numExamples; i++ ){
+			Example e = data.get(i);
+			int position = rowStart[i];
+			
+			for( int f: e.getFeatureSet() ){
+				double value = e.getFeature(f);
+				
+				if( f < numFeatures && value != 0.0 ){
+					rowFeatures[position] = f;
+					rowValues[position++] = value;
+					postingValues[next[f]] = value;
+					postings[next[f]++] = i;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Index the non-zero values of feature columns
+	 * 
+	 * @param columns the feature values, indexed by feature index then example
+	 * @param numExamples the number of examples
+	 */
+	public SparseFeatures(double[][] columns, int numExamples){
+		this.numExamples = numExamples;
+		this.numFeatures = columns.length;
+		rowStart = new int[numExamples+1];
+		int[] counts = new int[numFeatures];
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			for( int i = 0; i < numExamples; i++ ){
+				if( columns[f][i] != 0.0 ){
+					counts[f]++;
+					rowStart[i+1]++;
+				}
+			}
+		}
+		
+		for( int i = 0; i < numExamples; i++ ){
+			rowStart[i+1] += rowStart[i];
+		}
+		
+		initializePostings(counts);
+		int[] next = rowStart.clone();
+		int position = 0;
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			for( int i = 0; i < numExamples; i++ ){
+				if( columns[f][i] != 0.0 ){
+					postingValues[position] = columns[f][i];
+					postings[position++] = i;
+					rowValues[next[i]] = columns[f][i];
+					rowFeatures[next[i]++] = f;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Index non-zero values that are already laid out by example (CSR), e.g. the
+	 * sparse feature block of a data set file.  The arrays are kept as the rows,
+	 * with any zeros or features at or above numFeatures squeezed out first.
+	 * 
+	 * @param numFeatures the number of feature indices
+	 * @param rowStart numExamples+1 offsets into rowFeatures
+	 * @param rowFeatures the features of each example
+	 * @param rowValues the values, in the same order as rowFeatures
+	 */
+	public SparseFeatures(int numFeatures, int[] rowStart, int[] rowFeatures, double[] rowValues){
+		this.numExamples = rowStart.length-1;
+		this.numFeatures = numFeatures;
+		this.rowStart = rowStart;
+		int[] counts = new int[numFeatures];
+		int position = 0;
+		
+		for( int i = 0; i < numExamples; i++ ){
+			int end = rowStart[i+1];
+			rowStart[i+1] = rowStart[i];
+			
+			for( int p = position; p < end; p++ ){
+				int f = rowFeatures[p];
+				
+				if( f < numFeatures && rowValues[p] != 0.0 ){
+					counts[f]++;
+					rowFeatures[rowStart[i+1]] = f;
+					rowValues[rowStart[i+1]++] = rowValues[p];
+				}
+			}
+			
+			position = end;
+		}
+		
+		postingsStart = new int[numFeatures+1];
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			postingsStart[f+1] = postingsStart[f] + counts[f];
+		}
+		
+		int numNonZeros = rowStart[numExamples];
+		this.rowFeatures = numNonZeros == rowFeatures.length ? rowFeatures : Arrays.copyOf(rowFeatures, numNonZeros);
+		this.rowValues = numNonZeros == rowValues.length ? rowValues : Arrays.copyOf(rowValues, numNonZeros);
+		postings = new int[numNonZeros];
+		postingValues = new double[numNonZeros];
+		int[] next = postingsStart.clone();
+		
+		for( int i = 0; i < numExamples; i++ ){
+			for( int p = rowStart[i]; p < rowStart[i+1]; p++ ){
+				int f = this.rowFeatures[p];
+				postingValues[next[f]] = this.rowValues[p];
+				postings[next[f]++] = i;
+			}
+		}
+	}
+	
+	/**
+	 * Lay out the postings from the number of examples for each feature, and
+	 * allocate the rows (rowStart must already be filled in)
+	 * 
+	 * @param counts
+	 */
+	private void initializePostings(int[] counts){
+		postingsStart = new int[numFeatures+1];
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			postingsStart[f+1] = postingsStart[f] + counts[f];
+		}
+		
+		postings = new int[postingsStart[numFeatures]];
+		postingValues = new double[postings.length];
+		rowFeatures = new int[rowStart[numExamples]];
+		rowValues = new double[rowFeatures.length];
+	}
+	
+	/**
+	 * @return the examples with non-zero values, feature by feature
+	 */
+	public int[] getPostings(){
+		return postings;
+	}
+	
+	/**
+	 * @return the non-zero values, in the same order as getPostings()
+	 */
+	public double[] getPostingValues(){
+		return postingValues;
+	}
+	
+	/**
+	 * @param feature a feature index, or numFeatures for the end of the postings
+	 * @return where the postings of feature start in getPostings()
+	 */
+	public int getPostingsStart(int feature){
+		return postingsStart[feature];
+	}
+	
+	/**
+	 * @return the features with non-zero values, example by example
+	 */
+	public int[] getRowFeatures(){
+		return rowFeatures;
+	}
+	
+	/**
+	 * @return the non-zero values, in the same order as getRowFeatures()
+	 */
+	public double[] getRowValues(){
+		return rowValues;
+	}
+	
+	/**
+	 * @param example an example, or the number of examples for the end of the rows
+	 * @return where the features of example start in getRowFeatures()
+	 */
+	public int getRowStart(int example){
+		return rowStart[example];
+	}
+	
+	/**
+	 * Look up one value of an example by scanning its row
+	 * 
+	 * @param example
+	 * @param feature
+	 * @return the value of feature for example, 0.0 if it isn't one of its non-zero values
+	 */
+	public double getValue(int example, int feature){
+		for( int i = rowStart[example]; i < rowStart[example+1]; i++ ){
+			if( rowFeatures[i] == feature ){
+				return rowValues[i];
+			}
+		}
+		
+		return 0.0;
+	}
+	
+	/**
+	 * @return the number of non-zero values
+	 */
+	public int getNumNonZeros(){
+		return postings.length;
+	}
+	
+	/**
+	 * @return the number of examples
+	 */
+	public int size(){
+		return numExamples;
+	}
+	
+	/**
+	 * @return the number of feature indices
+	 */
+	public int getNumFeatures(){
+		return numFeatures;
+	}
+}
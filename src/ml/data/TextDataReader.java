@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 
@@ -15,6 +16,8 @@ import ml.utils.HashMapCounter;
  * 
  * Each example should be a single line in the file.  The line should start with a numerical
  * label and then the words of the example should follow with each word separated by whitespace.
+ * The words are numbered in the order they're first seen, or hashed into features by a
+ * FeatureHasher, which doesn't keep a vocabulary.
  * 
  * @author dkauchak
  *
@@ -26,11 +29,25 @@ public class TextDataReader implements Iterator<Example>{
 	// keep track of the mapping of the words to their feature index
 	private HashMap<String, Integer> wordToFeature = new HashMap<String,Integer>();
 	private int currentFeature = 0;
+	
+	// or hash the words into features, keeping track of which ones occur
+	private FeatureHasher hasher;
+	private BitSet hashedFeatures;
 		
 	/**
 	 * @param textFile the text file containing the examples
 	 */
-	public TextDataReader(String textFile){		
+	public TextDataReader(String textFile){
+		this(textFile, null);
+	}
+	
+	/**
+	 * @param textFile the text file containing the examples
+	 * @param hasher hashes the words into features instead of numbering them (may be null)
+	 */
+	public TextDataReader(String textFile, FeatureHasher hasher){
+		setHasher(hasher);
+		
 		try {
 			in = new BufferedReader(new FileReader(textFile));
 			nextLine = in.readLine();
@@ -39,6 +56,39 @@ public class TextDataReader implements Iterator<Example>{
 		}
 	}
 	
+	/**
+	 * @param in source of the examples, one per line
+	 */
+	public TextDataReader(BufferedReader in){
+		this(in, null);
+	}
+	
+	/**
+	 * @param in source of the examples, one per line
+	 * @param hasher hashes the words into features instead of numbering them (may be null)
+	 */
+	public TextDataReader(BufferedReader in, FeatureHasher hasher){
+		setHasher(hasher);
+		this.in = in;
+		
+		try {
+			nextLine = in.readLine();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @param hasher
+	 */
+	private void setHasher(FeatureHasher hasher){
+		this.hasher = hasher;
+		
+		if( hasher != null ){
+			hashedFeatures = new BitSet();
+		}
+	}
+	
 	@Override
 	public boolean hasNext() {
 		return nextLine != null;
@@ -51,6 +101,11 @@ public class TextDataReader implements Iterator<Example>{
 		if( hasNext() ){
 			data = new Example();
 			
+			if( hasher != null ){
+				nextHashed(data);
+				return data;
+			}
+			
 			// parse the line
 			String[] parts = nextLine.split("\\s+");
 			
@@ -88,6 +143,38 @@ public class TextDataReader implements Iterator<Example>{
 		return data;
 	}
 	
+	/**
+	 * Parse the next line by hashing its words, without splitting it up
+	 * 
+	 * @param data filled in with the example
+	 */
+	private void nextHashed(Example data){
+		int labelStart = 0;
+		
+		while( labelStart < nextLine.length() && Character.isWhitespace(nextLine.charAt(labelStart)) ){
+			labelStart++;
+		}
+		
+		int labelEnd = labelStart;
+		
+		while( labelEnd < nextLine.length() && !Character.isWhitespace(nextLine.charAt(labelEnd)) ){
+			labelEnd++;
+		}
+		
+		data.setLabel(Double.parseDouble(nextLine.substring(labelStart, labelEnd)));
+		hasher.addFeatures(nextLine, labelEnd, data);
+		
+		for( int feature: data.getFeatureSet() ){
+			hashedFeatures.set(feature);
+		}
+		
+		try {
+			nextLine = in.readLine();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	@Override
 	public void remove() {
 		// OPTIONAL, so we won't implement
@@ -101,6 +188,10 @@ public class TextDataReader implements Iterator<Example>{
 	 * @return feature map
 	 */
 	public HashMap<Integer, String> getFeatureMap(){
+		if( hasher != null ){
+			return FeatureHasher.getFeatureMap(hashedFeatures);
+		}
+		
 		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
 		
 		for( String word: wordToFeature.keySet() ){
@@ -0,0 +1,180 @@
+package ml.classifiers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Growing a seeded forest with warm start has to give the same trees as
+ * training it at full size, and stopping the vote early has to give the same
+ * predictions as counting every tree.  Trees are compared through their saved
+ * model files, which hold all of their nodes.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class EnsembleTreeClassifierTest {
+	private static final int ROWS = 500;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * @param seed
+	 * @param numLabels
+	 * @return a dense data set whose labels depend on the first two features
+	 */
+	private static DataSet data(long seed, int numLabels){
+		Random rand = new Random(seed);
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		double[][] columns = new double[5][ROWS];
+		double[] labels = new double[ROWS];
+		
+		for( int f = 0; f < columns.length; f++ ){
+			featureMap.put(f, "feature" + f);
+		}
+		
+		for( int i = 0; i < ROWS; i++ ){
+			for( int f = 0; f < columns.length; f++ ){
+				columns[f][i] = rand.nextGaussian();
+			}
+			
+			double sum = columns[0][i] + columns[1][i] + 0.5*rand.nextGaussian();
+			labels[i] = Math.min(numLabels-1, Math.max(0, (int)Math.floor(sum + numLabels/2.0)));
+		}
+		
+		return new DataSet(featureMap, columns, labels);
+	}
+	
+	/**
+	 * @param numTrees
+	 * @return a seeded forest that isn't trained yet
+	 */
+	private static EnsembleTreeClassifier forest(int numTrees){
+		EnsembleTreeClassifier forest = new EnsembleTreeClassifier();
+		forest.setSeed(14);
+		forest.setNumTrees(numTrees);
+		forest.setDepthLimit(6);
+		forest.setFeatureBagging(true);
+		forest.setHistogramSplits(true);
+		return forest;
+	}
+	
+	/**
+	 * @param forest
+	 * @return the bytes of the forest's model file
+	 * @throws IOException
+	 */
+	private byte[] saved(EnsembleTreeClassifier forest) throws IOException{
+		File file = folder.newFile();
+		forest.save(file.getPath());
+		return Files.readAllBytes(file.toPath());
+	}
+	
+	@Test
+	public void warmStartGrowsTheSameForest() throws IOException{
+		DataSet data = data(15, 3);
+		EnsembleTreeClassifier full = forest(20);
+		full.train(data);
+		
+		EnsembleTreeClassifier grown = forest(10);
+		grown.setWarmStart(true);
+		grown.train(data);
+		grown.setNumTrees(20);
+		grown.train(data);
+		
+		assertArrayEquals(saved(full), saved(grown));
+		assertArrayEquals(full.classifyBatch(data), grown.classifyBatch(data), 0.0);
+		
+		// and shrinking it drops the last trees
+		EnsembleTreeClassifier small = forest(5);
+		small.train(data);
+		grown.setNumTrees(5);
+		grown.train(data);
+		
+		assertArrayEquals(saved(small), saved(grown));
+	}
+	
+	@Test
+	public void warmStartKeepsTheTrainedTrees() throws IOException{
+		DataSet data = data(15, 3);
+		EnsembleTreeClassifier forest = forest(10);
+		forest.setWarmStart(true);
+		forest.train(data);
+		byte[] expected = saved(forest);
+		
+		// none of the trees are missing, so none are retrained with the new depth
+		forest.setDepthLimit(1);
+		forest.train(data);
+		
+		assertArrayEquals(expected, saved(forest));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void warmStartNeedsTheSameLabels(){
+		EnsembleTreeClassifier forest = forest(5);
+		forest.setWarmStart(true);
+		forest.train(data(15, 3));
+		forest.setNumTrees(10);
+		forest.train(data(15, 2));
+	}
+	
+	@Test
+	public void earlyExitKeepsThePredictions(){
+		DataSet data = data(16, 3);
+		EnsembleTreeClassifier forest = forest(25);
+		forest.train(data);
+		double[] predictions = forest.classifyBatch(data);
+		ArrayList<Example> examples = data.getData();
+		
+		forest.setEarlyExit(true);
+		forest.resetTreesEvaluated();
+		double[] batch = forest.classifyBatch(data);
+		
+		assertArrayEquals(predictions, batch, 0.0);
+		assertEquals(ROWS, forest.getExamplesClassified());
+		assertTrue("evaluated " + forest.getTreesEvaluated() + " trees",
+			forest.getTreesEvaluated() < 25L*ROWS);
+		
+		forest.resetTreesEvaluated();
+		
+		for( int i = 0; i < ROWS; i++ ){
+			assertEquals(predictions[i], forest.classify(examples.get(i)), 0.0);
+		}
+		
+		assertTrue(forest.getTreesEvaluated() < 25L*ROWS);
+		
+		int[] rows = {9, ROWS-1, 0, 9};
+		double[] picked = forest.classifyBatch(data, rows);
+		
+		for( int i = 0; i < rows.length; i++ ){
+			assertEquals(predictions[rows[i]], picked[i], 0.0);
+		}
+	}
+	
+	@Test
+	public void everyTreeVotesWithoutEarlyExit(){
+		DataSet data = data(16, 3);
+		EnsembleTreeClassifier forest = forest(25);
+		forest.train(data);
+		forest.resetTreesEvaluated();
+		forest.classifyBatch(data);
+		forest.classify(data.getData().get(0));
+		
+		assertEquals(ROWS+1, forest.getExamplesClassified());
+		assertEquals(25L*(ROWS+1), forest.getTreesEvaluated());
+	}
+}
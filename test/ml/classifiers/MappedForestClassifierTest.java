@@ -0,0 +1,257 @@
+package ml.classifiers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Saving trained trees and forests to model files and opening them with
+ * MappedForestClassifier, which has to predict exactly what the trained model
+ * does, and opening model files that are truncated or corrupt.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class MappedForestClassifierTest {
+	private static final int ROWS = 400;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * @return a dense data set with three labels that depend on the first two features
+	 */
+	private static DataSet denseData(){
+		Random rand = new Random(3);
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		double[][] columns = new double[5][ROWS];
+		double[] labels = new double[ROWS];
+		
+		for( int f = 0; f < columns.length; f++ ){
+			featureMap.put(f, "feature" + f);
+		}
+		
+		for( int i = 0; i < ROWS; i++ ){
+			for( int f = 0; f < columns.length; f++ ){
+				columns[f][i] = rand.nextGaussian();
+			}
+			
+			double sum = columns[0][i] + columns[1][i] + 0.5*rand.nextGaussian();
+			labels[i] = sum < -0.5 ? 0 : sum < 0.5 ? 1 : 2;
+		}
+		
+		return new DataSet(featureMap, columns, labels);
+	}
+	
+	/**
+	 * @return a sparse data set (see DataSet.isSparse), like text
+	 */
+	private static DataSet sparseData(){
+		Random rand = new Random(4);
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		ArrayList<Example> examples = new ArrayList<Example>();
+		
+		for( int f = 0; f < 300; f++ ){
+			featureMap.put(f, "word" + f);
+		}
+		
+		for( int i = 0; i < ROWS; i++ ){
+			Example e = new Example();
+			boolean positive = rand.nextBoolean();
+			e.setLabel(positive ? 1.0 : -1.0);
+			e.addFeature(positive ? rand.nextInt(10) : 10 + rand.nextInt(10), 1.0);
+			
+			for( int k = 0; k < 5; k++ ){
+				e.addFeature(20 + rand.nextInt(280), 1.0);
+			}
+			
+			examples.add(e);
+		}
+		
+		DataSet data = new DataSet(featureMap);
+		data.addData(examples);
+		return data;
+	}
+	
+	/**
+	 * @return a seeded forest that isn't trained yet
+	 */
+	private static EnsembleTreeClassifier forest(){
+		EnsembleTreeClassifier forest = new EnsembleTreeClassifier();
+		forest.setSeed(5);
+		forest.setNumTrees(15);
+		forest.setDepthLimit(6);
+		forest.setFeatureBagging(true);
+		return forest;
+	}
+	
+	/**
+	 * Check that a mapped model predicts exactly what the model it was saved from does
+	 * 
+	 * @param expected
+	 * @param mapped
+	 * @param data
+	 */
+	private static void assertSamePredictions(Predictor expected, Predictor mapped, DataSet data){
+		assertArrayEquals(expected.getClassLabels(), mapped.getClassLabels(), 0.0);
+		assertArrayEquals(expected.classifyBatch(data), mapped.classifyBatch(data), 0.0);
+		assertArrayEquals(expected.confidenceBatch(data), mapped.confidenceBatch(data), 0.0);
+		ArrayList<Example> examples = data.getData();
+		
+		for( int i = 0; i < examples.size(); i += 13 ){
+			Example e = examples.get(i);
+			assertEquals(expected.classify(e), mapped.classify(e), 0.0);
+			assertEquals(expected.confidence(e), mapped.confidence(e), 0.0);
+			assertArrayEquals(expected.predictProba(e), mapped.predictProba(e), 0.0);
+		}
+		
+		int[] rows = {5, 0, 17, 17, ROWS-1};
+		double[] predictions = expected.classifyBatch(data);
+		double[] picked = mapped.classifyBatch(data, rows);
+		
+		for( int i = 0; i < rows.length; i++ ){
+			assertEquals(predictions[rows[i]], picked[i], 0.0);
+		}
+	}
+	
+	/**
+	 * @param model
+	 * @return the file the model was saved to
+	 * @throws IOException
+	 */
+	private File save(Object model) throws IOException{
+		File file = folder.newFile();
+		
+		if( model instanceof DecisionTreeClassifier ){
+			((DecisionTreeClassifier)model).save(file.getPath());
+		}else if( model instanceof EnsembleTreeClassifier ){
+			((EnsembleTreeClassifier)model).save(file.getPath());
+		}else{
+			((StreamingForestClassifier)model).save(file.getPath());
+		}
+		
+		return file;
+	}
+	
+	@Test
+	public void forestRoundTrip() throws IOException{
+		for( DataSet data: new DataSet[]{denseData(), sparseData()} ){
+			EnsembleTreeClassifier forest = forest();
+			forest.train(data);
+			MappedForestClassifier mapped = new MappedForestClassifier(save(forest).getPath());
+			
+			assertEquals(15, mapped.getNumTrees());
+			assertSamePredictions(forest, mapped, data);
+		}
+	}
+	
+	@Test
+	public void treeRoundTrip() throws IOException{
+		DataSet data = denseData();
+		DecisionTreeClassifier tree = new DecisionTreeClassifier();
+		tree.setDepthLimit(8);
+		tree.train(data);
+		MappedForestClassifier mapped = new MappedForestClassifier(save(tree).getPath());
+		
+		assertEquals(1, mapped.getNumTrees());
+		assertSamePredictions(tree, mapped, data);
+	}
+	
+	@Test
+	public void streamingForestRoundTrip() throws IOException{
+		DataSet data = denseData();
+		StreamingForestClassifier forest = new StreamingForestClassifier();
+		forest.setSeed(6);
+		forest.setNumTrees(10);
+		forest.setDepthLimit(6);
+		forest.train(data);
+		
+		assertSamePredictions(forest, new MappedForestClassifier(save(forest).getPath()), data);
+	}
+	
+	@Test
+	public void truncatedFilesAreRejected() throws IOException{
+		EnsembleTreeClassifier forest = forest();
+		forest.train(denseData());
+		byte[] bytes = Files.readAllBytes(save(forest).toPath());
+		
+		for( int length = 0; length < bytes.length; length += 5 ){
+			assertRejected(Arrays.copyOf(bytes, length));
+		}
+		
+		assertRejected(Arrays.copyOf(bytes, bytes.length+8));
+	}
+	
+	@Test
+	public void corruptFilesAreRejected() throws IOException{
+		EnsembleTreeClassifier forest = forest();
+		forest.train(denseData());
+		byte[] bytes = Files.readAllBytes(save(forest).toPath());
+		int numClasses = 3;
+		int trees = ForestModelFile.HEADER_SIZE + 8*numClasses; // the number of trees
+		int root = trees + 8 + 8; // the first node of the first tree
+		
+		assertRejected(setInt(bytes, 0, 0)); // magic
+		assertRejected(setInt(bytes, 4, ForestModelFile.VERSION+1));
+		assertRejected(setInt(bytes, 8, 7)); // kind
+		
+		for( int value: new int[]{0, -1, Integer.MAX_VALUE} ){
+			assertRejected(setInt(bytes, 12, value)); // number of classes
+			assertRejected(setInt(bytes, trees, value));
+			assertRejected(setInt(bytes, trees + 8, value)); // number of nodes
+			assertRejected(setInt(bytes, trees + 12, value)); // number of leaves
+		}
+		
+		// the root's left child pointing back at the root, or past the tree
+		assertRejected(setInt(bytes, root + 4, 0));
+		assertRejected(setInt(bytes, root + 4, Integer.MAX_VALUE));
+		assertRejected(setInt(bytes, root, -5));
+	}
+	
+	/**
+	 * @param bytes
+	 * @param offset
+	 * @param value
+	 * @return a copy of bytes with the little-endian int at offset set to value
+	 */
+	private static byte[] setInt(byte[] bytes, int offset, int value){
+		byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return copy;
+	}
+	
+	/**
+	 * Check that opening a model file with these contents fails with an IOException
+	 * 
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void assertRejected(byte[] bytes) throws IOException{
+		File file = folder.newFile();
+		Files.write(file.toPath(), bytes);
+		
+		try{
+			new MappedForestClassifier(file.getPath());
+		}catch(IOException e){
+			return;
+		}
+		
+		fail("Opened a corrupt model file of " + bytes.length + " bytes");
+	}
+}
@@ -0,0 +1,152 @@
+package ml.classifiers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+import ml.data.DataSet;
+import ml.data.Example;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Training a StreamingForestClassifier has to grow the same trees from the
+ * same seed wherever the examples are streamed from (a CSV file, a binary file
+ * or a data set in memory) and however many passes each level takes.  Trees
+ * are compared through their saved model files, which hold all of their nodes.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class StreamingForestClassifierTest {
+	private static final int ROWS = 600;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Write a CSV file with three labels that depend on the first two features
+	 * 
+	 * @return the file
+	 * @throws IOException
+	 */
+	private File csvFile() throws IOException{
+		Random rand = new Random(12);
+		File file = folder.newFile("data.csv");
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		out.println("a,b,c,d,label");
+		
+		for( int i = 0; i < ROWS; i++ ){
+			double[] values = new double[4];
+			
+			for( int f = 0; f < values.length; f++ ){
+				values[f] = Math.round(rand.nextGaussian()*1000)/1000.0;
+				out.print(values[f] + ",");
+			}
+			
+			double sum = values[0] + values[1] + 0.5*rand.nextGaussian();
+			out.println(sum < -0.5 ? 0 : sum < 0.5 ? 1 : 2);
+		}
+		
+		out.close();
+		return file;
+	}
+	
+	/**
+	 * @return a seeded forest that isn't trained yet
+	 */
+	private static StreamingForestClassifier forest(){
+		StreamingForestClassifier forest = new StreamingForestClassifier();
+		forest.setSeed(13);
+		forest.setNumTrees(12);
+		forest.setDepthLimit(5);
+		forest.setFeatureBagging(true);
+		return forest;
+	}
+	
+	/**
+	 * @param forest
+	 * @return the bytes of the forest's model file
+	 * @throws IOException
+	 */
+	private byte[] saved(StreamingForestClassifier forest) throws IOException{
+		File file = folder.newFile();
+		forest.save(file.getPath());
+		return Files.readAllBytes(file.toPath());
+	}
+	
+	@Test
+	public void sourcesGrowTheSameTrees() throws IOException{
+		String csv = csvFile().getPath();
+		DataSet data = new DataSet(csv, DataSet.CSVFILE);
+		String binary = folder.newFile("data.bin").getPath();
+		data.save(binary);
+		
+		StreamingForestClassifier fromCSV = forest();
+		fromCSV.train(csv, DataSet.CSVFILE);
+		StreamingForestClassifier fromBinary = forest();
+		fromBinary.train(binary, DataSet.BINARYFILE);
+		StreamingForestClassifier fromMemory = forest();
+		fromMemory.train(data);
+		
+		byte[] expected = saved(fromMemory);
+		assertArrayEquals(expected, saved(fromCSV));
+		assertArrayEquals(expected, saved(fromBinary));
+		assertArrayEquals(fromMemory.classifyBatch(data), fromCSV.classifyBatch(data), 0.0);
+		
+		double[] predictions = fromMemory.classifyBatch(data);
+		int correct = 0;
+		
+		for( int i = 0; i < ROWS; i++ ){
+			if( predictions[i] == data.getLabelColumn()[i] ){
+				correct++;
+			}
+		}
+		
+		assertTrue("training accuracy " + correct/(double)ROWS, correct > 0.7*ROWS);
+	}
+	
+	@Test
+	public void passesDontChangeTheTrees() throws IOException{
+		DataSet data = new DataSet(csvFile().getPath(), DataSet.CSVFILE);
+		StreamingForestClassifier onePass = forest();
+		onePass.train(data);
+		StreamingForestClassifier manyPasses = forest();
+		manyPasses.setMaxHistogramBytes(4096);
+		manyPasses.train(data);
+		
+		assertTrue(manyPasses.getNumPasses() > onePass.getNumPasses());
+		assertArrayEquals(saved(onePass), saved(manyPasses));
+	}
+	
+	@Test
+	public void batchMatchesSingle() throws IOException{
+		DataSet data = new DataSet(csvFile().getPath(), DataSet.CSVFILE);
+		StreamingForestClassifier forest = forest();
+		forest.train(data);
+		double[] predictions = forest.classifyBatch(data);
+		double[] confidences = forest.confidenceBatch(data);
+		ArrayList<Example> examples = data.getData();
+		
+		for( int i = 0; i < ROWS; i++ ){
+			assertEquals(predictions[i], forest.classify(examples.get(i)), 0.0);
+			assertEquals(confidences[i], forest.confidence(examples.get(i)), 0.0);
+		}
+		
+		int[] rows = {ROWS-1, 3, 3, 0};
+		double[] picked = forest.classifyBatch(data, rows);
+		
+		for( int i = 0; i < rows.length; i++ ){
+			assertEquals(predictions[rows[i]], picked[i], 0.0);
+		}
+	}
+}
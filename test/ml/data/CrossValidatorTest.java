@@ -0,0 +1,198 @@
+package ml.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import ml.classifiers.Classifier;
+import ml.classifiers.ClassifierFactory;
+import ml.classifiers.DecisionTreeClassifier;
+import ml.classifiers.EnsembleTreeClassifier;
+import ml.classifiers.StreamingForestClassifier;
+
+import org.junit.Test;
+
+/**
+ * Cross-validation has to give the same predictions however many folds run at
+ * once, and the same predictions as training and classifying each fold by hand.
+ * The trees split on histogram bins, since the features are continuous.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class CrossValidatorTest {
+	private static final int ROWS = 500;
+	private static final int FOLDS = 5;
+	
+	/**
+	 * @return a dense data set with three labels that depend on the first two features
+	 */
+	private static DataSet data(){
+		Random rand = new Random(8);
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		double[][] columns = new double[4][ROWS];
+		double[] labels = new double[ROWS];
+		
+		for( int f = 0; f < columns.length; f++ ){
+			featureMap.put(f, "feature" + f);
+		}
+		
+		for( int i = 0; i < ROWS; i++ ){
+			for( int f = 0; f < columns.length; f++ ){
+				columns[f][i] = rand.nextGaussian();
+			}
+			
+			double sum = columns[0][i] - columns[1][i] + 0.5*rand.nextGaussian();
+			labels[i] = sum < -0.5 ? 0 : sum < 0.5 ? 1 : 2;
+		}
+		
+		return new DataSet(featureMap, columns, labels);
+	}
+	
+	private static final ClassifierFactory FORESTS = new ClassifierFactory() {
+		public Classifier newClassifier() {
+			EnsembleTreeClassifier forest = new EnsembleTreeClassifier();
+			forest.setSeed(9);
+			forest.setNumTrees(10);
+			forest.setDepthLimit(6);
+			forest.setFeatureBagging(true);
+			forest.setHistogramSplits(true);
+			return forest;
+		}
+	};
+	
+	private static final ClassifierFactory TREES = new ClassifierFactory() {
+		public Classifier newClassifier() {
+			DecisionTreeClassifier tree = new DecisionTreeClassifier();
+			tree.setDepthLimit(6);
+			tree.setHistogramSplits(true);
+			return tree;
+		}
+	};
+	
+	private static final ClassifierFactory STREAMING_FORESTS = new ClassifierFactory() {
+		public Classifier newClassifier() {
+			StreamingForestClassifier forest = new StreamingForestClassifier();
+			forest.setSeed(10);
+			forest.setNumTrees(8);
+			forest.setDepthLimit(6);
+			return forest;
+		}
+	};
+	
+	@Test
+	public void foldsPartitionTheRows(){
+		CrossValidator cv = new CrossValidator(data(), FOLDS, 1);
+		boolean[] seen = new boolean[ROWS];
+		
+		for( int fold = 0; fold < FOLDS; fold++ ){
+			int[] rows = cv.getFold(fold);
+			assertTrue(rows.length == ROWS/FOLDS);
+			int[] weights = cv.getTrainingWeights(fold);
+			
+			for( int row: rows ){
+				assertTrue("row " + row + " is in two folds", !seen[row]);
+				seen[row] = true;
+				assertEquals(0, weights[row]);
+			}
+			
+			int total = 0;
+			
+			for( int weight: weights ){
+				total += weight;
+			}
+			
+			assertEquals(ROWS - rows.length, total);
+		}
+		
+		for( int i = 0; i < ROWS; i++ ){
+			assertTrue("row " + i + " is in no fold", seen[i]);
+		}
+		
+		assertArrayEquals(cv.getFold(2), new CrossValidator(data(), FOLDS, 1).getFold(2));
+	}
+	
+	@Test
+	public void parallelMatchesSerial(){
+		DataSet data = data();
+		
+		for( ClassifierFactory classifiers: new ClassifierFactory[]{FORESTS, TREES, STREAMING_FORESTS} ){
+			CrossValidator cv = new CrossValidator(data, FOLDS, 2);
+			cv.setParallelism(1);
+			CrossValidationResult serial = cv.run(classifiers);
+			cv.setParallelism(4);
+			CrossValidationResult parallel = cv.run(classifiers);
+			
+			assertArrayEquals(serial.getPredictions(), parallel.getPredictions(), 0.0);
+			assertArrayEquals(serial.getFoldAccuracies(), parallel.getFoldAccuracies(), 0.0);
+			assertTrue("accuracy " + serial.getAccuracy(), serial.getAccuracy() > 0.6);
+		}
+	}
+	
+	@Test
+	public void foldsMatchTrainingByHand(){
+		DataSet data = data();
+		CrossValidator cv = new CrossValidator(data, FOLDS, 3);
+		cv.setParallelism(2);
+		double[] forestPredictions = cv.run(FORESTS).getPredictions();
+		double[] streamingPredictions = cv.run(STREAMING_FORESTS).getPredictions();
+		
+		for( int fold = 0; fold < FOLDS; fold++ ){
+			int[] rows = cv.getFold(fold);
+			
+			// weighted: the whole data set, with the fold weighted 0
+			EnsembleTreeClassifier forest = (EnsembleTreeClassifier)FORESTS.newClassifier();
+			forest.train(data, cv.getTrainingWeights(fold));
+			double[] predictions = forest.classifyBatch(data, rows);
+			
+			// not weighted: a copy of the other folds, in fold order
+			int[] trainRows = new int[ROWS - rows.length];
+			int numRows = 0;
+			
+			for( int other = 0; other < FOLDS; other++ ){
+				if( other != fold ){
+					for( int row: cv.getFold(other) ){
+						trainRows[numRows++] = row;
+					}
+				}
+			}
+			
+			Classifier streaming = STREAMING_FORESTS.newClassifier();
+			streaming.train(data.subset(trainRows));
+			double[] streamingFold = streaming.classifyBatch(data, rows);
+			
+			for( int i = 0; i < rows.length; i++ ){
+				assertEquals(predictions[i], forestPredictions[rows[i]], 0.0);
+				assertEquals(streamingFold[i], streamingPredictions[rows[i]], 0.0);
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void tooManyFoldsAreRejected(){
+		new CrossValidator(data(), ROWS+1, 1);
+	}
+	
+	@Test
+	public void rowsAreClassifiedInPlace(){
+		DataSet data = data();
+		EnsembleTreeClassifier forest = (EnsembleTreeClassifier)FORESTS.newClassifier();
+		forest.train(data);
+		double[] all = forest.classifyBatch(data);
+		int[] rows = new CrossValidator(data, FOLDS, 4).getFold(0);
+		double[] picked = forest.classifyBatch(data, rows);
+		double[] copied = forest.classifyBatch(data.subset(rows));
+		
+		assertArrayEquals(copied, picked, 0.0);
+		
+		for( int i = 0; i < rows.length; i++ ){
+			assertEquals(all[rows[i]], picked[i], 0.0);
+		}
+		
+		assertEquals(0, forest.classifyBatch(data, new int[0]).length);
+		assertTrue(Arrays.equals(all, forest.classifyBatch(data)));
+	}
+}
@@ -0,0 +1,244 @@
+package ml.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Saving data sets to binary files (see DataSet.save) and reading them back,
+ * in both layouts, and opening files that are truncated or corrupt.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class DataSetFileTest {
+	private static final int ROWS = 300;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * @param numFeatures
+	 * @return feature names for the feature indices
+	 */
+	private static HashMap<Integer, String> featureMap(int numFeatures){
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			featureMap.put(f, "feature" + f);
+		}
+		
+		return featureMap;
+	}
+	
+	/**
+	 * @return a dense data set with three labels, in column storage
+	 */
+	private static DataSet denseData(){
+		Random rand = new Random(1);
+		double[][] columns = new double[6][ROWS];
+		double[] labels = new double[ROWS];
+		
+		for( int i = 0; i < ROWS; i++ ){
+			for( int f = 0; f < columns.length; f++ ){
+				columns[f][i] = rand.nextInt(5) == 0 ? 0.0 : rand.nextGaussian();
+			}
+			
+			labels[i] = rand.nextInt(3) - 1;
+		}
+		
+		return new DataSet(featureMap(columns.length), columns, labels);
+	}
+	
+	/**
+	 * @return a data set with a few non-zero features out of many, which is sparse
+	 */
+	private static DataSet sparseData(){
+		Random rand = new Random(2);
+		ArrayList<Example> examples = new ArrayList<Example>();
+		
+		for( int i = 0; i < ROWS; i++ ){
+			Example e = new Example();
+			e.setLabel(rand.nextBoolean() ? 1.0 : -1.0);
+			
+			for( int k = 0; k < 4; k++ ){
+				e.addFeature(rand.nextInt(200), 1 + rand.nextInt(3));
+			}
+			
+			examples.add(e);
+		}
+		
+		DataSet data = new DataSet(featureMap(200));
+		data.addData(examples);
+		return data;
+	}
+	
+	/**
+	 * @param data
+	 * @return the file the data set was saved to
+	 * @throws IOException
+	 */
+	private File save(DataSet data) throws IOException{
+		File file = folder.newFile();
+		data.save(file.getPath());
+		return file;
+	}
+	
+	@Test
+	public void denseRoundTrip() throws IOException{
+		DataSet data = denseData();
+		File file = save(data);
+		DataSetFile read = new DataSetFile(file.getPath());
+		
+		assertEquals(DataSetFile.DENSE, read.getLayout());
+		assertEquals(ROWS, read.size());
+		assertEquals(data.getFeatureMap(), read.getFeatureMap());
+		assertArrayEquals(data.getClassLabels(), read.getClassLabels(), 0.0);
+		assertArrayEquals(data.getClassIds(), read.getClassIds());
+		
+		double[][] columns = read.readColumns();
+		assertEquals(data.getColumns().length, columns.length);
+		
+		for( int f = 0; f < columns.length; f++ ){
+			assertArrayEquals(data.getColumns()[f], columns[f], 0.0);
+		}
+		
+		DataSet loaded = new DataSet(file.getPath(), DataSet.BINARYFILE);
+		assertArrayEquals(data.getLabelColumn(), loaded.getLabelColumn(), 0.0);
+		assertArrayEquals(data.getColumns()[3], loaded.getColumns()[3], 0.0);
+	}
+	
+	@Test
+	public void sparseRoundTrip() throws IOException{
+		DataSet data = sparseData();
+		assertTrue(data.isSparse());
+		File file = save(data);
+		DataSetFile read = new DataSetFile(file.getPath());
+		
+		assertEquals(DataSetFile.SPARSE, read.getLayout());
+		assertFalse(read.hasDenseExamples());
+		assertArrayEquals(data.getClassIds(), read.getClassIds());
+		
+		SparseFeatures expected = data.getSparseFeatures();
+		SparseFeatures features = read.readSparseFeatures();
+		assertEquals(expected.getNumNonZeros(), features.getNumNonZeros());
+		
+		for( int i = 0; i < ROWS; i++ ){
+			assertEquals(expected.getRowStart(i+1), features.getRowStart(i+1));
+		}
+		
+		assertArrayEquals(expected.getRowFeatures(), features.getRowFeatures());
+		assertArrayEquals(expected.getRowValues(), features.getRowValues(), 0.0);
+		
+		ArrayList<Example> examples = new DataSet(file.getPath(), DataSet.BINARYFILE).getData();
+		
+		for( int i = 0; i < ROWS; i++ ){
+			Example e = data.getData().get(i);
+			assertEquals(e.getLabel(), examples.get(i).getLabel(), 0.0);
+			assertEquals(e.getFeatureSet(), examples.get(i).getFeatureSet());
+			
+			for( int f: e.getFeatureSet() ){
+				assertEquals(e.getFeature(f), examples.get(i).getFeature(f), 0.0);
+			}
+		}
+	}
+	
+	@Test
+	public void truncatedFilesAreRejected() throws IOException{
+		for( DataSet data: new DataSet[]{denseData(), sparseData()} ){
+			byte[] bytes = Files.readAllBytes(save(data).toPath());
+			
+			for( int length = 0; length < bytes.length; length += 7 ){
+				assertRejected(Arrays.copyOf(bytes, length));
+			}
+		}
+	}
+	
+	@Test
+	public void corruptHeadersAreRejected() throws IOException{
+		for( DataSet data: new DataSet[]{denseData(), sparseData()} ){
+			byte[] bytes = Files.readAllBytes(save(data).toPath());
+			
+			// layout, number of examples, number of features and number of names
+			for( int offset: new int[]{8, 16, 20, 24} ){
+				for( int value: new int[]{-1, Integer.MIN_VALUE, Integer.MAX_VALUE} ){
+					assertRejected(setInt(bytes, offset, value));
+				}
+			}
+			
+			// the name length of the first feature
+			assertRejected(setInt(bytes, 32, -5));
+			assertRejected(setInt(bytes, 32, bytes.length));
+		}
+	}
+	
+	@Test
+	public void badClassIdsAreRejected() throws IOException{
+		DataSet data = denseData();
+		byte[] bytes = Files.readAllBytes(save(data).toPath());
+		
+		// the class ids come right before the columns
+		int classIdStart = bytes.length - 8*ROWS*data.getColumns().length - 4*ROWS;
+		assertRejected(setInt(bytes, classIdStart, -1));
+		assertRejected(setInt(bytes, classIdStart + 4*(ROWS-1), data.getNumClasses()));
+	}
+	
+	@Test
+	public void otherFilesAreRejected() throws IOException{
+		assertRejected("label,a,b\n1,2,3\n".getBytes("UTF-8"));
+		assertRejected(new byte[0]);
+	}
+	
+	/**
+	 * @param bytes
+	 * @param offset
+	 * @param value
+	 * @return a copy of bytes with the little-endian int at offset set to value
+	 */
+	private static byte[] setInt(byte[] bytes, int offset, int value){
+		byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return copy;
+	}
+	
+	/**
+	 * Check that opening a file with these contents and reading its features
+	 * fails with an IOException
+	 * 
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private void assertRejected(byte[] bytes) throws IOException{
+		File file = folder.newFile();
+		Files.write(file.toPath(), bytes);
+		
+		try{
+			DataSetFile read = new DataSetFile(file.getPath());
+			
+			if( read.getLayout() == DataSetFile.SPARSE ){
+				read.readSparseFeatures();
+			}else{
+				read.readColumns();
+			}
+		}catch(IOException e){
+			return;
+		}
+		
+		fail("Read a corrupt file of " + bytes.length + " bytes");
+	}
+}
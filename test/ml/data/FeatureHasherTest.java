@@ -0,0 +1,116 @@
+package ml.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import ml.classifiers.EnsembleTreeClassifier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Hashed text read each way it can be hashed: by TextDataReader, by
+ * ParallelDataLoader and by FeatureHasher as a preprocessor.  The three have to
+ * give the same data set, sparse even at bit counts where dense columns
+ * wouldn't fit.
+ * 
+ * @author Antony Bello, Nick Reminder, Dima Smirnov
+ */
+public class FeatureHasherTest {
+	private static final int ROWS = 600;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Write a text file whose labels depend on a few of its words
+	 * 
+	 * @return the file
+	 * @throws IOException
+	 */
+	private File textFile() throws IOException{
+		Random rand = new Random(7);
+		File file = folder.newFile("text.txt");
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		
+		for( int i = 0; i < ROWS; i++ ){
+			int label = rand.nextBoolean() ? 1 : -1;
+			StringBuilder line = new StringBuilder();
+			line.append(label);
+			
+			for( int w = 0; w < 15; w++ ){
+				line.append(' ');
+				
+				if( rand.nextInt(4) == 0 ){
+					line.append(label == 1 ? "oak" : "citrus").append(rand.nextInt(3));
+				}else{
+					line.append("word").append(rand.nextInt(2000));
+				}
+			}
+			
+			out.println(line);
+		}
+		
+		out.close();
+		return file;
+	}
+	
+	/**
+	 * Train a seeded forest on the data and classify it
+	 * 
+	 * @param data
+	 * @return the predictions
+	 */
+	private static double[] trainAndClassify(DataSet data){
+		EnsembleTreeClassifier forest = new EnsembleTreeClassifier();
+		forest.setSeed(11);
+		forest.setDepthLimit(8);
+		forest.setNumTrees(10);
+		forest.setFeatureBagging(true);
+		forest.train(data);
+		return forest.classifyBatch(data);
+	}
+	
+	@Test
+	public void hashingPathsAgree() throws IOException{
+		String filename = textFile().getPath();
+		
+		for( int bits: new int[]{16, 24} ){
+			DataSet read = new DataSet(filename, new FeatureHasher(bits));
+			DataSet loaded = new DataSet(filename, new FeatureHasher(bits), 4);
+			DataSet preprocessed = new DataSet(filename, DataSet.TEXTFILE);
+			new FeatureHasher(bits).preprocessTrain(preprocessed);
+			
+			for( DataSet data: new DataSet[]{read, loaded, preprocessed} ){
+				assertEquals(ROWS, data.size());
+				assertTrue("hashed text should stay sparse at " + bits + " bits", data.isSparse());
+			}
+			
+			double[] predictions = trainAndClassify(read);
+			assertEquals(ROWS, predictions.length);
+			assertArrayEquals(predictions, trainAndClassify(loaded), 0.0);
+			assertArrayEquals(predictions, trainAndClassify(preprocessed), 0.0);
+		}
+	}
+	
+	@Test
+	public void hashesWordsConsistently(){
+		FeatureHasher hasher = new FeatureHasher(20);
+		assertEquals(1 << 20, hasher.getNumFeatures());
+		assertEquals(hasher.getFeature("oak"), new FeatureHasher(20).getFeature("oak"));
+		
+		for( String word: new String[]{"oak", "citrus", "word17"} ){
+			int feature = hasher.getFeature(word);
+			assertTrue(feature >= 0 && feature < hasher.getNumFeatures());
+			assertEquals(1.0, Math.abs(hasher.getSign(word)), 0.0);
+		}
+	}
+}